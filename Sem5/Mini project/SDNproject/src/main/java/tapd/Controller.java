@@ -1,35 +1,34 @@
 package tapd;
 
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+
 /**
- * Simple SDN controller holder (SMILE version uses arrays).
+ * Simple SDN controller holder (columnar FeatureMatrix / LabelVector data).
+ * trainX shares localX's rows (label poisoning never touches features) and trainY is a
+ * copy-on-write overlay of localY, so a controller only pays for labels it flips.
  */
 public class Controller {
     public int id;
-    public double[][] localX; // validation data
-    public int[] localY;
-    public double[][] trainX; // training data (may be poisoned)
-    public int[] trainY;
+    public FeatureMatrix localX; // validation data
+    public LabelVector localY;
+    public FeatureMatrix trainX; // training data (may be poisoned)
+    public LabelVector trainY;
     public Object model;      // SMILE RandomForest instance (typed as Object)
     public boolean compromised;
 
-    public Controller(int id, double[][] localX, int[] localY) {
+    public Controller(int id, FeatureMatrix localX, LabelVector localY) {
         this.id = id;
         this.localX = localX;
         this.localY = localY;
-        this.trainX = copy2D(localX);
-        this.trainY = java.util.Arrays.copyOf(localY, localY.length);
+        this.trainX = localX;
+        this.trainY = localY.overlay();
         this.model = null;
         this.compromised = false;
     }
 
-    private static double[][] copy2D(double[][] a) {
-        double[][] b = new double[a.length][];
-        for (int i = 0; i < a.length; i++) b[i] = java.util.Arrays.copyOf(a[i], a[i].length);
-        return b;
-    }
-
     @Override
     public String toString() {
-        return "Controller{id=" + id + ", comp=" + compromised + ", localRows=" + (localX==null?0:localX.length) + "}";
+        return "Controller{id=" + id + ", comp=" + compromised + ", localRows=" + (localX==null?0:localX.rows()) + "}";
     }
 }
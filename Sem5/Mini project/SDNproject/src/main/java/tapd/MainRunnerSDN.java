@@ -1,12 +1,21 @@
 package tapd;
 
+import tapd.data.CoresetBuilder;
 import tapd.data.DatasetReader;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
 import tapd.data.Preprocessor;
 import tapd.data.Splitter;
 import tapd.attack.Poisoner;
 import tapd.model.ModelTrainer;
+import tapd.model.EarlyStopPolicy;
+import tapd.model.ErrorMatrix;
+import tapd.model.GossipSchedule;
 import tapd.model.ModelTransferManager;
 import tapd.model.Evaluator;
+import tapd.model.PredictionCache;
+import tapd.detect.ConfidenceEvaluator;
+import tapd.detect.IncrementalDetector;
 import tapd.detect.OutlierDetector;
 import tapd.detect.Voter;
 import tapd.detect.CommandCenter;
@@ -36,6 +45,24 @@ public class MainRunnerSDN {
         double eta = 0.1;          // IQR multiplier for outlier detection
         int numTrees = 100;        // RandomForest trees
         long seed = 42L;           // RNG seed for reproducibility
+        boolean streamingLoad = true; // SAX reader (low memory) instead of full XSSFWorkbook
+        boolean useCache = true;      // reuse <excel>.tapdcache when the file is unchanged
+        boolean offHeap = false;      // keep the full dataset in a direct buffer outside the heap
+        boolean parallelTraining = true; // train the N forests concurrently
+        int coreBudget = Runtime.getRuntime().availableProcessors(); // threads shared by all forests
+        boolean parallelTransfers = true; // fill the N x N errors matrix on coreBudget threads
+        boolean earlyStopTransfers = false; // estimate each cell from shuffled mini-batches (EarlyStopPolicy)
+        boolean useCoreset = false;   // evaluate transfers on a per-controller coreset of localX
+        int coresetSize = 500;        // rows per controller coreset
+        boolean coresetReport = true; // also run full evaluation and print detection agreement
+        boolean cachePredictions = true; // keep per-row predictions for reuse across stages
+        boolean treeSweep = false;    // report transfer errors/detections for smaller forests
+        int[] sweepTrees = {10, 25, 50, 75, 100}; // forest sizes k for the sweep (first k trees)
+        boolean incrementalDemo = false; // retrain one controller and re-detect with row k only
+        boolean sparseReport = false; // detection recall when each model is evaluated by only k peers
+        int[] sparsePeers = {1, 2, 3, 5}; // peers per model per gossip round
+        int sparseRounds = 1;         // gossip rounds accumulated before detecting
+        int sparseMinObserved = 4;    // observed cells for a per-source IQR threshold
         Random rnd = new Random(seed);
 
         // Decision strategy: "any", "n_div_3", or "majority"
@@ -48,23 +75,28 @@ public class MainRunnerSDN {
 
         // -------- 1. Load dataset --------
         DatasetReader dr = new DatasetReader();
-        Map<String, Object> raw = dr.load(excel);
-        double[][] X = (double[][]) raw.get("X");
-        int[] y = (int[]) raw.get("y");
-        System.out.println("Loaded rows=" + X.length + " features=" + (X.length > 0 ? X[0].length : 0));
+        Map<String, Object> raw = dr.loadMatrix(excel, streamingLoad, useCache);
+        FeatureMatrix X = (FeatureMatrix) raw.get("matrix");
+        LabelVector y = (LabelVector) raw.get("labels");
+        if (offHeap && !X.isOffHeap()) X = X.toOffHeap();
+        System.out.println("Loaded rows=" + X.rows() + " features=" + X.cols());
 
         // -------- 2. Train/test split (80/20) --------
         Map<String, Object> split = dr.trainTestSplit(X, y, 0.8, seed);
-        double[][] trainX = (double[][]) split.get("trainX");
-        int[] trainY = (int[]) split.get("trainY");
-        double[][] testX = (double[][]) split.get("testX");
-        int[] testY = (int[]) split.get("testY");
-        System.out.println("Train rows=" + trainX.length + " Test rows=" + testX.length);
+        FeatureMatrix trainX = (FeatureMatrix) split.get("trainX");
+        LabelVector trainY = (LabelVector) split.get("trainY");
+        FeatureMatrix testX = (FeatureMatrix) split.get("testX");
+        LabelVector testY = (LabelVector) split.get("testY");
+        System.out.println("Train rows=" + trainX.rows() + " Test rows=" + testX.rows());
 
         // -------- 3. Preprocess (z-score normalization) --------
+        // Fit on the train rows only (single parallel pass), normalise the whole store once
+        // (in place unless it is the read-only mapped cache) and re-take the views.
         Preprocessor pre = new Preprocessor();
-        double[][] trainXnorm = pre.fitTransform(trainX);
-        double[][] testXnorm = pre.transform(testX);
+        pre.fitParallel(trainX);
+        FeatureMatrix Xnorm = X.isReadOnly() ? pre.transform(X) : pre.transformInPlace(X);
+        FeatureMatrix trainXnorm = Xnorm.view((int[]) split.get("trainIdx"));
+        FeatureMatrix testXnorm = Xnorm.view((int[]) split.get("testIdx"));
         System.out.println("Preprocessing done (z-score normalization)");
 
         // -------- 4. Split TRAIN into N controllers --------
@@ -72,8 +104,8 @@ public class MainRunnerSDN {
         List<Map<String, Object>> parts = sp.split(trainXnorm, trainY, N, seed);
         List<Controller> controllers = new ArrayList<>();
         for (int i = 0; i < parts.size(); i++) {
-            double[][] Xi = (double[][]) parts.get(i).get("X");
-            int[] yi = (int[]) parts.get(i).get("y");
+            FeatureMatrix Xi = (FeatureMatrix) parts.get(i).get("X");
+            LabelVector yi = (LabelVector) parts.get(i).get("y");
             controllers.add(new Controller(i, Xi, yi));
         }
         for (Controller c : controllers) System.out.println(c);
@@ -96,15 +128,35 @@ public class MainRunnerSDN {
         // -------- 7. Train RandomForest models --------
         ModelTrainer trainer = new ModelTrainer();
         List<RandomForest> models = new ArrayList<>();
-        for (Controller c : controllers) {
-            RandomForest m = trainer.trainRandomForest(c.trainX, c.trainY, numTrees, seed + c.id);
-            c.model = m;
-            models.add(m);
-            System.out.println("Trained model for controller " + c.id);
+        if (parallelTraining) {
+            List<FeatureMatrix> trainXs = new ArrayList<>();
+            List<LabelVector> trainYs = new ArrayList<>();
+            for (Controller c : controllers) {
+                trainXs.add(c.trainX);
+                trainYs.add(c.trainY);
+            }
+            models = trainer.trainAll(trainXs, trainYs, numTrees, seed, coreBudget);
+            for (Controller c : controllers) c.model = models.get(c.id);
+            System.out.println("Trained " + models.size() + " models in parallel (core budget " + coreBudget + ")");
+        } else {
+            // same per-controller seed streams as trainAll, so both paths build identical forests
+            List<SplittableRandom> seeds = ModelTrainer.forestSeeds(seed, controllers.size());
+            for (Controller c : controllers) {
+                RandomForest m = trainer.trainRandomForest(c.trainX, c.trainY, numTrees, seeds.get(c.id));
+                c.model = m;
+                models.add(m);
+                System.out.println("Trained model for controller " + c.id);
+            }
         }
 
         // -------- 8. Evaluate models on test set (average accuracy) --------
         Evaluator evaluator = new Evaluator();
+        if (cachePredictions) evaluator.cache = new PredictionCache();
+        // Compiled forests must predict exactly like SMILE on the test set
+        for (RandomForest m : models) {
+            int bad = evaluator.verifyCompiled(m, testXnorm);
+            if (bad > 0) System.err.println("Compiled forest disagreed on " + bad + " test rows, using SMILE predict for it");
+        }
         double avgAcc = 0.0;
         for (RandomForest m : models) {
             avgAcc += evaluator.computeAccuracy(m, testXnorm, testY);
@@ -114,26 +166,59 @@ public class MainRunnerSDN {
 
         // -------- 9. Model transfer (errors matrix) --------
         ModelTransferManager mtm = new ModelTransferManager(evaluator);
-        List<double[][]> localsX = new ArrayList<>();
-        List<int[]> localsY = new ArrayList<>();
+        List<FeatureMatrix> localsX = new ArrayList<>();
+        List<LabelVector> localsY = new ArrayList<>();
         for (Controller c : controllers) {
             localsX.add(c.localX);
             localsY.add(c.localY);
         }
-        List<List<Double>> errors = mtm.performTransfers(models, localsX, localsY);
+        ErrorMatrix errors;
+        if (earlyStopTransfers) {
+            EarlyStopPolicy policy = new EarlyStopPolicy();
+            errors = mtm.performTransfersEarlyStop(models, localsX, localsY, policy, coreBudget);
+            long rowsTotal = 0;
+            for (FeatureMatrix lx : localsX) rowsTotal += lx.rows();
+            System.out.printf("Early-stopping transfers (%s): scored %d of %d rows%n",
+                    policy, errors.totalSamples(), rowsTotal * models.size());
+        } else if (useCoreset) {
+            CoresetBuilder cb = new CoresetBuilder();
+            cb.size = coresetSize;
+            errors = mtm.performTransfersOnCoresets(models, localsX, localsY, cb, seed, coreBudget);
+            System.out.println("Transfers evaluated on coresets of ~" + coresetSize + " rows per controller");
+            if (coresetReport) {
+                ErrorMatrix full = mtm.performTransfersParallel(models, localsX, localsY, coreBudget);
+                Map<String, Object> agreement = new OutlierDetector().compareDetections(full, errors, eta);
+                System.out.println("Coreset vs full detection agreement: " + agreement);
+            }
+        } else if (parallelTransfers) {
+            errors = mtm.performTransfersParallel(models, localsX, localsY, coreBudget);
+        } else {
+            errors = mtm.performTransfers(models, localsX, localsY);
+        }
         IOUtils.writeErrorsMatrixCSV(errors, new File("errors_matrix.csv"));
         System.out.println("Saved errors_matrix.csv");
+        if (evaluator.cache != null) {
+            double[] voteConf = ConfidenceEvaluator.computeVoteConfidence(evaluator, models, localsX);
+            System.out.println("Vote confidence on own data: " + Arrays.toString(voteConf));
+            System.out.println(evaluator.cache);
+        }
+
+        // -------- 9b. Forest-size sweep (optional) --------
+        if (treeSweep) {
+            Map<Integer, ErrorMatrix> sweep = mtm.performTransferSweep(models, localsX, localsY, sweepTrees, coreBudget);
+            OutlierDetector sweepOd = new OutlierDetector();
+            for (Map.Entry<Integer, ErrorMatrix> e : sweep.entrySet()) {
+                Map<String, Object> agreement = sweepOd.compareDetections(errors, e.getValue(), eta);
+                System.out.printf("Trees=%d mean error per source=%s detection agreement=%s%n",
+                        e.getKey(), Arrays.toString(e.getValue().rowMeans()), agreement.get("cellAgreement"));
+            }
+            IOUtils.writeTreeSweepCSV(sweep, new File("tree_sweep.csv"));
+            System.out.println("Saved tree_sweep.csv");
+        }
 
         // -------- Plot 1: average transfer error per source (line) --------
         try {
-            int Nsrc = errors.size();
-            double[] avgErrors = new double[Nsrc];
-            for (int i = 0; i < Nsrc; i++) {
-                List<Double> row = errors.get(i);
-                double sum = 0.0;
-                for (Double v : row) sum += v;
-                avgErrors[i] = row.isEmpty() ? 0.0 : sum / row.size();
-            }
+            double[] avgErrors = errors.rowMeans();
             File outFile = new File("avg_errors_line.png");
             SimplePlot.drawLineChart(
                     avgErrors,
@@ -151,8 +236,10 @@ public class MainRunnerSDN {
         // -------- 10. Outlier detection -> votes --------
         OutlierDetector od = new OutlierDetector();
         List<Set<Integer>> votes = new ArrayList<>();
-        for (int s = 0; s < errors.size(); s++) {
-            Set<Integer> suspects = od.detectIQROutliers(errors.get(s), eta);
+        for (int s = 0; s < errors.rows(); s++) {
+            Set<Integer> suspects = errors.hasIntervals()
+                    ? od.detectConfidentOutliers(errors.row(s), eta)
+                    : od.detectIQROutliers(errors.row(s), eta);
             votes.add(suspects);
             System.out.println("Source " + s + " suspects: " + suspects);
         }
@@ -195,6 +282,45 @@ public class MainRunnerSDN {
         int truth = stats.getOrDefault("Truth", 0);
         System.out.println("=== SUMMARY === Detected " + detected + " / " + truth + " compromised controllers");
 
+        // -------- 14. Incremental re-detection (optional) --------
+        if (incrementalDemo && !errors.hasIntervals() && !useCoreset) {
+            IncrementalDetector inc = new IncrementalDetector(evaluator, models, localsX, localsY, errors, eta, decisionStrategy);
+            int k = compromised.isEmpty() ? 0 : compromised.iterator().next();
+            Controller ck = controllers.get(k);
+            // stream N + k of the same forestSeeds sequence (streams 0..N-1 built the original models)
+            SplittableRandom retrainSeeds = ModelTrainer.forestSeeds(seed, N + k + 1).get(N + k);
+            RandomForest retrained = trainer.trainRandomForest(ck.trainX, ck.trainY, numTrees, retrainSeeds);
+            Map<String, Object> change = inc.updateModel(k, retrained);
+            System.out.println("Controller " + k + " retrained, incremental re-detection: " + change);
+        }
+
+        // -------- 15. Sparse gossip topology: recall vs peers per model (optional) --------
+        if (sparseReport) {
+            List<double[]> table = new ArrayList<>();
+            for (int k : sparsePeers) {
+                GossipSchedule schedule = new GossipSchedule(N, k, seed);
+                ErrorMatrix sparse = null;
+                for (int r = 0; r < sparseRounds; r++) {
+                    sparse = mtm.performTransfersSparse(models, localsX, localsY, schedule, r, sparse, coreBudget);
+                }
+                List<Set<Integer>> sparseVotes = od.detectSparseOutliers(sparse, eta, sparseMinObserved);
+                Map<Integer, Double> rates = voter.voteRates(sparseVotes, sparse);
+                Set<Integer> sparseSuspects = cc.decideSuspectsByRate(rates, decisionStrategy);
+                Map<Integer, Double> weightedRates = ConfidenceEvaluator.weightedVoteRates(
+                        sparseVotes, ConfidenceEvaluator.computeConfidence(sparse), sparse);
+                Map<String, Integer> sparseStats = cc.computeDetectionStats(sparseSuspects, compromised);
+                int tp = sparseStats.get("TP"), fp = sparseStats.get("FP");
+                double recall = compromised.isEmpty() ? 1.0 : (double) tp / compromised.size();
+                long cellsSeen = 0;
+                for (int s = 0; s < N; s++) cellsSeen += sparse.rowCount(s);
+                System.out.printf("Sparse k=%d rounds=%d: evaluations=%d of %d, suspects=%s recall=%.3f FP=%d weighted rates=%s%n",
+                        schedule.k, sparseRounds, cellsSeen, (long) N * N, sparseSuspects, recall, fp, weightedRates);
+                table.add(new double[]{schedule.k, sparseRounds, cellsSeen, recall, fp});
+            }
+            IOUtils.writeTableCSV("k,rounds,evaluations,recall,FP", table, new File("sparse_recall.csv"));
+            System.out.println("Saved sparse_recall.csv");
+        }
+
         System.out.println("=== TAPD SDN finished ===");
     }
 }
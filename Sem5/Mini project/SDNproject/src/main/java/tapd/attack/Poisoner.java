@@ -1,5 +1,7 @@
 package tapd.attack;
 
+import tapd.data.LabelVector;
+
 import java.util.*;
 
 /**
@@ -17,4 +19,16 @@ public class Poisoner {
             trainY[i] = (trainY[i] == 0) ? 1 : 0; // flip
         }
     }
+
+    // Same draw sequence as above, on a (possibly bit-packed) LabelVector
+    public static void applyRLM(LabelVector trainY, double theta, Random rnd) {
+        int n = trainY.size();
+        int toFlip = (int)Math.ceil(theta * n);
+        if (toFlip <= 0) return;
+        Set<Integer> ids = new HashSet<>();
+        while (ids.size() < Math.min(n, toFlip)) ids.add(rnd.nextInt(n));
+        for (int i : ids) {
+            trainY.set(i, trainY.get(i) == 0 ? 1 : 0); // flip
+        }
+    }
 }
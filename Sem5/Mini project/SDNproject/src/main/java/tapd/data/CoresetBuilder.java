@@ -0,0 +1,134 @@
+package tapd.data;
+
+import java.util.*;
+
+/**
+ * Picks a small validation subset (coreset) of one controller's local data.
+ *
+ * - class-stratified: each class gets a quota proportional to its share of the rows,
+ *   but at least minClassFraction * size rows (or all of them) so a rare attack class
+ *   is never dropped;
+ * - feature-diverse: within a class, (1 - diversity) of the quota is a uniform random
+ *   sample (keeps error estimates unbiased) and the rest is chosen greedily by
+ *   farthest-point selection from a random candidate pool, so sparse regions of the
+ *   feature space are covered too.
+ *
+ * The result is an index view over the caller's matrix (no rows are copied).
+ * Returns Map{ "X"->FeatureMatrix, "y"->LabelVector, "idx"->int[] } like Splitter.
+ *
+ * Usage:
+ *   CoresetBuilder cb = new CoresetBuilder();
+ *   cb.size = 500;
+ *   Map<String,Object> core = cb.build(c.localX, c.localY, seed + c.id);
+ */
+public class CoresetBuilder {
+    public int size = 500;                  // target rows (may end slightly above for class floors)
+    public double diversity = 0.5;          // share of each quota chosen by farthest-point
+    public double minClassFraction = 0.05;  // floor per class, as a share of size
+    public int candidateFactor = 4;         // farthest-point candidates per diverse pick
+
+    public Map<String,Object> build(FeatureMatrix X, LabelVector y, long seed) {
+        int[] idx = select(X, y, seed);
+        Map<String,Object> m = new HashMap<>();
+        m.put("X", X.view(idx));
+        m.put("y", y.view(idx));
+        m.put("idx", idx);
+        return m;
+    }
+
+    /** Row ids of the coreset, sorted ascending (all rows when X has at most size rows). */
+    public int[] select(FeatureMatrix X, LabelVector y, long seed) {
+        int n = X.rows();
+        if (n <= size) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            return all;
+        }
+        SplittableRandom rnd = new SplittableRandom(seed);
+
+        // rows per class, in row order
+        Map<Integer, int[]> byClass = new TreeMap<>();
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < n; i++) counts.merge(y.get(i), 1, Integer::sum);
+        Map<Integer, Integer> fill = new HashMap<>();
+        for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+            byClass.put(e.getKey(), new int[e.getValue()]);
+            fill.put(e.getKey(), 0);
+        }
+        for (int i = 0; i < n; i++) {
+            int c = y.get(i);
+            int k = fill.get(c);
+            byClass.get(c)[k] = i;
+            fill.put(c, k + 1);
+        }
+
+        int floor = Math.max(1, (int) Math.ceil(minClassFraction * size));
+        List<Integer> picked = new ArrayList<>();
+        for (Map.Entry<Integer, int[]> e : byClass.entrySet()) {
+            int[] rows = e.getValue();
+            int quota = (int) Math.round((double) size * rows.length / n);
+            quota = Math.min(rows.length, Math.max(quota, floor));
+            for (int id : pickFromClass(X, rows, quota, rnd.split())) picked.add(id);
+        }
+
+        int[] out = new int[picked.size()];
+        for (int i = 0; i < out.length; i++) out[i] = picked.get(i);
+        Arrays.sort(out);
+        return out;
+    }
+
+    // quota rows of one class: random part, then farthest-point part from a random pool
+    private int[] pickFromClass(FeatureMatrix X, int[] rows, int quota, SplittableRandom rnd) {
+        int m = rows.length;
+        int[] perm = Arrays.copyOf(rows, m);
+        int diverse = (int) Math.round(quota * diversity);
+        int random = quota - diverse;
+        int pool = Math.min(m, random + Math.max(diverse, diverse * candidateFactor));
+        // partial Fisher-Yates: perm[0..pool) is a uniform random sample
+        for (int i = 0; i < pool; i++) {
+            int j = i + rnd.nextInt(m - i);
+            int t = perm[i]; perm[i] = perm[j]; perm[j] = t;
+        }
+        int[] out = Arrays.copyOf(perm, quota);
+        if (diverse == 0) return out;
+
+        // candidates perm[random..pool), distances to everything already chosen
+        int d = X.cols();
+        int cands = pool - random;
+        double[] cx = new double[cands * d];
+        double[] row = new double[d];
+        for (int c = 0; c < cands; c++) {
+            X.copyRow(perm[random + c], row);
+            System.arraycopy(row, 0, cx, c * d, d);
+        }
+        double[] minDist = new double[cands];
+        Arrays.fill(minDist, Double.POSITIVE_INFINITY);
+        boolean[] taken = new boolean[cands];
+        for (int r = 0; r < random; r++) {
+            X.copyRow(perm[r], row);
+            updateDistances(cx, d, row, 0, minDist);
+        }
+        for (int k = 0; k < diverse; k++) {
+            int best = -1;
+            double bestD = -1.0;
+            for (int c = 0; c < cands; c++) {
+                if (!taken[c] && minDist[c] > bestD) { bestD = minDist[c]; best = c; }
+            }
+            taken[best] = true;
+            out[random + k] = perm[random + best];
+            updateDistances(cx, d, cx, best * d, minDist);
+        }
+        return out;
+    }
+
+    private static void updateDistances(double[] cx, int d, double[] p, int off, double[] minDist) {
+        for (int c = 0, base = 0; c < minDist.length; c++, base += d) {
+            double s = 0.0;
+            for (int j = 0; j < d; j++) {
+                double diff = cx[base + j] - p[off + j];
+                s += diff * diff;
+            }
+            if (s < minDist[c]) minDist[c] = s;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package tapd.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parallel loader for CSV/TSV flow exports. Produces a FeatureMatrix + LabelVector
+ * ("matrix"/"labels"); DatasetReader.loadCsv turns that into the usual "X"/"y" map.
+ *
+ * The file is cut into byte ranges whose starts are moved to the next line start,
+ * each range is memory-mapped and parsed on a ForkJoinPool into primitive buffers with
+ * chunk-local string dictionaries. Local dictionaries are then merged in file order,
+ * which gives exactly the codes a single sequential pass would assign.
+ *
+ * Rules (as in load): first line is the header, last field is the label
+ * ("Attack"->1, numeric -> rounded, else 0), empty feature -> 0.0, numeric text -> value,
+ * anything else -> encode(col, s). Width = header fields - 1; short rows are padded with 0.0.
+ * Double-quoted fields ("a,b", "say ""hi""") are supported, but not newlines inside quotes.
+ */
+class CsvLoader {
+
+    private static final long MIN_CHUNK = 4L << 20;     // 4 MB
+    private static final long MAX_CHUNK = 256L << 20;   // one MappedByteBuffer per chunk
+
+    private final DatasetReader reader;
+    private final ForkJoinPool pool;
+
+    CsvLoader(DatasetReader reader, ForkJoinPool pool) {
+        this.reader = reader;
+        this.pool = pool;
+    }
+
+    Map<String,Object> loadMatrix(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = ch.size();
+            byte[] header = readLine(ch, 0);
+            long dataStart = Math.min(size, header.length + 1L);
+            String headerText = new String(header, StandardCharsets.UTF_8);
+            byte delim = detectDelimiter(path, headerText);
+            int width = Math.max(0, countFields(headerText, (char) delim) - 1);
+
+            // byte ranges aligned to line starts
+            long chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (pool.getParallelism() * 4L)));
+            List<long[]> ranges = new ArrayList<>();
+            for (long start = dataStart; start < size; ) {
+                long end = Math.min(size, start + chunk);
+                if (end < size) end = nextLineStart(ch, end, size);
+                ranges.add(new long[]{start, end});
+                start = end;
+            }
+
+            List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+            for (long[] r : ranges) {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        return parseChunk(ch, r[0], r[1], delim, width);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }));
+            }
+            List<Chunk> chunks = new ArrayList<>();
+            for (ForkJoinTask<Chunk> t : tasks) chunks.add(t.join());
+            return assemble(chunks, width, path);
+        }
+    }
+
+    // ---------------------------------------------------------------- merge
+
+    private Map<String,Object> assemble(List<Chunk> chunks, int width, String path) {
+        int total = 0;
+        int[] offsets = new int[chunks.size()];
+        for (int c = 0; c < chunks.size(); c++) {
+            offsets[c] = total;
+            total += chunks.get(c).rows;
+        }
+        if (total == 0) throw new RuntimeException("No rows read from " + path);
+
+        // deterministic dictionary merge: chunk order, then local first-seen order
+        int[][][] remap = new int[chunks.size()][width][];
+        for (int c = 0; c < chunks.size(); c++) {
+            StringDictionary[] local = chunks.get(c).dicts;
+            for (int j = 0; j < width; j++) {
+                if (local[j] == null) continue;
+                StringDictionary global = reader.dictionary(j);
+                int[] m = new int[local[j].size()];
+                for (int k = 0; k < m.length; k++) m[k] = global.encode(local[j].word(k));
+                remap[c][j] = m;
+            }
+        }
+
+        FeatureMatrix X = FeatureMatrix.allocate(total, width);
+        double[] data = X.heapArray();
+        int[] y = new int[total];
+        int n = total;
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int c = 0; c < chunks.size(); c++) {
+            Chunk ck = chunks.get(c);
+            int off = offsets[c];
+            int[][] m = remap[c];
+            tasks.add(pool.submit(() -> {
+                for (int j = 0; j < width; j++) {
+                    int dst = j * n + off;
+                    for (int r = 0, cell = j; r < ck.rows; r++, cell += width) {
+                        double v = ck.values[cell];
+                        if ((ck.encoded[cell >>> 6] & (1L << cell)) != 0) v = m[j][(int) v];
+                        data[dst + r] = v;
+                    }
+                }
+                System.arraycopy(ck.labels, 0, y, off, ck.rows);
+            }));
+        }
+        for (ForkJoinTask<?> t : tasks) t.join();
+
+        Map<String,Object> out = new HashMap<>();
+        out.put("matrix", X);
+        out.put("labels", LabelVector.of(y));
+        return out;
+    }
+
+    // ---------------------------------------------------------------- chunk parsing
+
+    /** Parsed rows of one byte range; string cells hold chunk-local codes flagged in 'encoded'. */
+    private static final class Chunk {
+        double[] values;
+        int[] labels = new int[1024];
+        long[] encoded;
+        StringDictionary[] dicts;
+        int rows;
+    }
+
+    private static Chunk parseChunk(FileChannel ch, long from, long to, byte delim, int width) throws IOException {
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        Chunk ck = new Chunk();
+        ck.values = new double[Math.max(1, 1024 * width)];
+        ck.encoded = new long[(ck.values.length >>> 6) + 1];
+        ck.dicts = new StringDictionary[width];
+        LineParser lp = new LineParser(buf, delim);
+
+        int limit = (int) (to - from);
+        int pos = 0;
+        while (pos < limit) {
+            int eol = pos;
+            while (eol < limit && buf.get(eol) != '\n') eol++;
+            int end = eol;
+            if (end > pos && buf.get(end - 1) == '\r') end--;
+            if (end > pos) addRow(ck, lp, pos, end, width);
+            pos = eol + 1;
+        }
+        return ck;
+    }
+
+    private static void addRow(Chunk ck, LineParser lp, int start, int end, int width) {
+        int nf = lp.split(start, end);
+        if (ck.rows == ck.labels.length) {
+            int cap = ck.rows * 2;
+            ck.labels = Arrays.copyOf(ck.labels, cap);
+            ck.values = Arrays.copyOf(ck.values, Math.max(1, cap * width));
+            ck.encoded = Arrays.copyOf(ck.encoded, (ck.values.length >>> 6) + 1);
+        }
+        int base = ck.rows * width;
+        int features = Math.min(nf - 1, width);
+        for (int j = 0; j < features; j++) {
+            CharSequence f = lp.field(j);
+            double v;
+            if (isBlank(f)) {
+                v = 0.0;
+            } else if (FastDouble.looksNumeric(f, 0, f.length())) {
+                try {
+                    v = FastDouble.parse(f, 0, f.length());
+                } catch (NumberFormatException ex) {
+                    v = encode(ck, j, base, f);
+                }
+            } else {
+                v = encode(ck, j, base, f);
+            }
+            ck.values[base + j] = v;
+        }
+        for (int j = Math.max(features, 0); j < width; j++) ck.values[base + j] = 0.0;
+        ck.labels[ck.rows++] = label(lp.field(nf - 1));
+    }
+
+    // chunk-local code; the cell is flagged so assemble(...) can remap it to the global code
+    private static double encode(Chunk ck, int col, int base, CharSequence f) {
+        if (ck.dicts[col] == null) ck.dicts[col] = new StringDictionary();
+        int cell = base + col;
+        ck.encoded[cell >>> 6] |= 1L << cell;
+        return ck.dicts[col].encode(f);
+    }
+
+    private static int label(CharSequence f) {
+        if (FastDouble.looksNumeric(f, 0, f.length())) {
+            try {
+                return (int) Math.round(FastDouble.parse(f, 0, f.length()));
+            } catch (NumberFormatException ex) {
+                // not a number after all -> compare as text
+            }
+        }
+        int s = 0, e = f.length();
+        while (s < e && f.charAt(s) <= ' ') s++;
+        while (e > s && f.charAt(e - 1) <= ' ') e--;
+        String attack = "Attack";
+        if (e - s != attack.length()) return 0;
+        for (int i = 0; i < attack.length(); i++) {
+            char a = f.charAt(s + i);
+            char b = attack.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) return 0;
+        }
+        return 1;
+    }
+
+    private static boolean isBlank(CharSequence f) {
+        for (int i = 0; i < f.length(); i++) if (f.charAt(i) > ' ') return false;
+        return true;
+    }
+
+    /**
+     * Splits one line into field bounds. Plain ASCII fields are exposed through a reused
+     * CharSequence view over the mapped bytes; quoted or non-ASCII fields become Strings.
+     */
+    private static final class LineParser implements CharSequence {
+        private final ByteBuffer buf;
+        private final byte delim;
+        private int[] starts = new int[64], ends = new int[64];
+        private String[] decoded = new String[64];
+        private int viewStart, viewEnd;
+
+        LineParser(ByteBuffer buf, byte delim) {
+            this.buf = buf;
+            this.delim = delim;
+        }
+
+        int split(int start, int end) {
+            int n = 0;
+            int p = start;
+            while (true) {
+                if (n == starts.length) grow();
+                decoded[n] = null;
+                int q = p;
+                while (q < end && buf.get(q) == ' ') q++;
+                if (q < end && buf.get(q) == '"') {
+                    ByteBuffer tmp = ByteBuffer.allocate(end - q);
+                    q++;
+                    while (q < end) {
+                        byte b = buf.get(q);
+                        if (b == '"') {
+                            if (q + 1 < end && buf.get(q + 1) == '"') { tmp.put((byte) '"'); q += 2; continue; }
+                            q++;
+                            break;
+                        }
+                        tmp.put(b);
+                        q++;
+                    }
+                    while (q < end && buf.get(q) != delim) q++;   // ignore junk after closing quote
+                    decoded[n] = new String(tmp.array(), 0, tmp.position(), StandardCharsets.UTF_8);
+                    starts[n] = p;
+                    ends[n] = q;
+                } else {
+                    q = p;
+                    boolean ascii = true;
+                    while (q < end && buf.get(q) != delim) {
+                        if (buf.get(q) < 0) ascii = false;
+                        q++;
+                    }
+                    starts[n] = p;
+                    ends[n] = q;
+                    if (!ascii) {
+                        byte[] b = new byte[q - p];
+                        for (int i = 0; i < b.length; i++) b[i] = buf.get(p + i);
+                        decoded[n] = new String(b, StandardCharsets.UTF_8);
+                    }
+                }
+                n++;
+                if (q >= end) return n;
+                p = q + 1;
+            }
+        }
+
+        CharSequence field(int k) {
+            if (decoded[k] != null) return decoded[k];
+            viewStart = starts[k];
+            viewEnd = ends[k];
+            return this;
+        }
+
+        private void grow() {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            ends = Arrays.copyOf(ends, ends.length * 2);
+            decoded = Arrays.copyOf(decoded, decoded.length * 2);
+        }
+
+        @Override public int length() { return viewEnd - viewStart; }
+        @Override public char charAt(int i) { return (char) (buf.get(viewStart + i) & 0xff); }
+        @Override public CharSequence subSequence(int s, int e) {
+            byte[] b = new byte[e - s];
+            for (int i = 0; i < b.length; i++) b[i] = buf.get(viewStart + s + i);
+            return new String(b, StandardCharsets.US_ASCII);
+        }
+        @Override public String toString() { return subSequence(0, length()).toString(); }
+    }
+
+    // ---------------------------------------------------------------- file helpers
+
+    private static byte[] readLine(FileChannel ch, long pos) throws IOException {
+        java.io.ByteArrayOutputStream line = new java.io.ByteArrayOutputStream();
+        ByteBuffer b = ByteBuffer.allocate(8192);
+        while (true) {
+            b.clear();
+            int n = ch.read(b, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                if (b.get(i) == '\n') {
+                    line.write(b.array(), 0, i);
+                    return line.toByteArray();
+                }
+            }
+            line.write(b.array(), 0, n);
+            pos += n;
+        }
+        return line.toByteArray();
+    }
+
+    // first position after the '\n' found at or after pos - 1
+    private static long nextLineStart(FileChannel ch, long pos, long size) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8192);
+        long p = pos - 1;
+        while (p < size) {
+            b.clear();
+            int n = ch.read(b, p);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) if (b.get(i) == '\n') return p + i + 1;
+            p += n;
+        }
+        return size;
+    }
+
+    private static byte detectDelimiter(String path, String header) {
+        String lower = path.toLowerCase();
+        if (lower.endsWith(".tsv") || lower.endsWith(".tab")) return '\t';
+        long tabs = header.chars().filter(c -> c == '\t').count();
+        long commas = header.chars().filter(c -> c == ',').count();
+        return tabs > commas ? (byte) '\t' : (byte) ',';
+    }
+
+    private static int countFields(String line, char delim) {
+        if (line.trim().isEmpty()) return 0;
+        int n = 1;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') quoted = !quoted;
+            else if (c == delim && !quoted) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,182 @@
+package tapd.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Binary columnar cache of a parsed dataset, so the Excel file is parsed only once.
+ *
+ * Layout (little-endian):
+ *   magic "TAPDCOL1" | int version | 32-byte SHA-256 of the source file | int rows | int cols
+ *   per column: int dictSize, then dictSize x (int byteLen, UTF-8 bytes) in code order
+ *   labels: rows x int
+ *   features: cols x (rows x double)   (column-major)
+ *
+ * read(...) memory-maps the file with FileChannel.map and returns null when the file is
+ * missing, corrupt or built from different source content, so callers fall back to parsing.
+ * Because the feature block is already column-major it can back a FeatureMatrix directly.
+ */
+public class DatasetCache {
+
+    private static final byte[] MAGIC = "TAPDCOL1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    /** Default cache location: next to the source, e.g. UNR-IDD.xlsx.tapdcache */
+    public static File cacheFileFor(String sourcePath) {
+        return new File(sourcePath + ".tapdcache");
+    }
+
+    /** SHA-256 of the file contents (read through a mapped channel in 64 MB windows). */
+    public static byte[] contentHash(File source) throws IOException {
+        try (FileChannel ch = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            long size = ch.size();
+            long window = 64L << 20;
+            for (long pos = 0; pos < size; pos += window) {
+                md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(window, size - pos)));
+            }
+            return md.digest();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Load the dataset from the cache if its hash matches, restoring the string encoders
+     * into reader. Returns a map with "matrix" (FeatureMatrix) and "labels" (LabelVector),
+     * or null if the cache cannot be used. With mapped=true the matrix reads straight from
+     * the mapped file (off-heap, read-only) when the feature block fits one mapping.
+     */
+    public static Map<String,Object> read(File cache, byte[] expectedHash, DatasetReader reader, boolean mapped) {
+        if (!cache.isFile()) return null;
+        try (FileChannel ch = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            MappedByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+            head.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            head.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || head.getInt() != VERSION) return null;
+            byte[] hash = new byte[32];
+            head.get(hash);
+            if (!Arrays.equals(hash, expectedHash)) return null;
+            int n = head.getInt();
+            int d = head.getInt();
+
+            List<List<String>> dicts = new ArrayList<>();
+            for (int j = 0; j < d; j++) {
+                int count = head.getInt();
+                List<String> words = new ArrayList<>(count);
+                for (int k = 0; k < count; k++) {
+                    byte[] b = new byte[head.getInt()];
+                    head.get(b);
+                    words.add(new String(b, StandardCharsets.UTF_8));
+                }
+                dicts.add(words);
+            }
+
+            long pos = head.position();
+            long featureBytes = (long) n * d * 8;
+            if (pos + (long) n * 4 + featureBytes != size) return null;
+
+            int[] y = new int[n];
+            mapped(ch, pos, (long) n * 4).asIntBuffer().get(y);
+            pos += (long) n * 4;
+
+            FeatureMatrix X;
+            if (mapped && featureBytes <= Integer.MAX_VALUE) {
+                X = FeatureMatrix.wrap(mapped(ch, pos, featureBytes).asDoubleBuffer(), n, d);
+            } else {
+                X = FeatureMatrix.allocate(n, d);
+                double[] data = X.heapArray();
+                for (int j = 0; j < d; j++) {
+                    DoubleBuffer db = mapped(ch, pos, (long) n * 8).asDoubleBuffer();
+                    db.get(data, j * n, n);
+                    pos += (long) n * 8;
+                }
+            }
+
+            reader.restoreEncoders(dicts);
+            Map<String,Object> out = new HashMap<>();
+            out.put("matrix", X);
+            out.put("labels", LabelVector.of(y));
+            return out;
+        } catch (Exception ex) {
+            System.err.println("Ignoring unreadable dataset cache " + cache + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /** Write X/y plus the per-column string dictionaries (atomically via a temp file). */
+    public static void write(File cache, byte[] hash, FeatureMatrix X, LabelVector y,
+                             List<List<String>> dicts) throws IOException {
+        int n = X.rows();
+        int d = X.cols();
+        Path tmp = Files.createTempFile(cache.getAbsoluteFile().toPath().getParent(), cache.getName(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                buf.put(MAGIC).putInt(VERSION).put(hash).putInt(n).putInt(d);
+                for (int j = 0; j < d; j++) {
+                    List<String> words = j < dicts.size() ? dicts.get(j) : Collections.emptyList();
+                    buf = ensure(ch, buf, 4);
+                    buf.putInt(words.size());
+                    for (String w : words) {
+                        byte[] b = w.getBytes(StandardCharsets.UTF_8);
+                        buf = ensure(ch, buf, 4 + b.length);
+                        buf.putInt(b.length).put(b);
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    buf = ensure(ch, buf, 4);
+                    buf.putInt(y.get(i));
+                }
+                double[] col = new double[n];
+                for (int j = 0; j < d; j++) {
+                    X.copyColumn(j, col, 0);
+                    for (int i = 0; i < n; i++) {
+                        buf = ensure(ch, buf, 8);
+                        buf.putDouble(col[i]);
+                    }
+                }
+                flush(ch, buf);
+            }
+            Files.move(tmp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Throwable ex) {
+            // do not leave a partial temp file next to the cache
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException cleanup) {
+                ex.addSuppressed(cleanup);
+            }
+            throw ex;
+        }
+    }
+
+    private static ByteBuffer mapped(FileChannel ch, long pos, long len) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, pos, len).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // flush when fewer than 'need' bytes remain; grow for oversized single entries
+    private static ByteBuffer ensure(FileChannel ch, ByteBuffer buf, int need) throws IOException {
+        if (buf.remaining() >= need) return buf;
+        flush(ch, buf);
+        if (buf.capacity() < need) return ByteBuffer.allocate(need).order(ByteOrder.LITTLE_ENDIAN);
+        return buf;
+    }
+
+    private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+}
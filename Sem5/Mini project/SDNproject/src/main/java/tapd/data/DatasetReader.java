@@ -1,31 +1,76 @@
 package tapd.data;
 
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import tapd.util.ParallelUtils;
 
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Read Excel (first sheet). Last column = label ("Attack"->1 else 0).
  * Encodes string feature values column-wise to integer codes.
  * Returns map with "X" -> double[][] and "y" -> int[].
+ * loadStreaming(...) gives the same result without building the workbook DOM.
+ * loadCached(...) reuses a binary columnar copy (see DatasetCache) when the source is unchanged.
+ * loadCsv(...) reads CSV/TSV flow exports in parallel with the same X/y contract.
  */
 public class DatasetReader {
 
-    private final Map<Integer, Map<String, Integer>> encoders = new HashMap<>();
+    // one string dictionary per column (index = column), created on first use
+    private StringDictionary[] encoders = new StringDictionary[0];
 
-    private int encode(int col, String s) {
-        s = s.trim();
-        encoders.putIfAbsent(col, new HashMap<>());
-        Map<String,Integer> map = encoders.get(col);
-        if (!map.containsKey(s)) map.put(s, map.size());
-        return map.get(s);
+    int encode(int col, String s) {
+        return dictionary(col).encode(s);
     }
 
+    StringDictionary dictionary(int col) {
+        if (col >= encoders.length) encoders = Arrays.copyOf(encoders, Math.max(col + 1, encoders.length * 2));
+        if (encoders[col] == null) encoders[col] = new StringDictionary();
+        return encoders[col];
+    }
+
+    // encoder dictionaries as lists in code order (index = code), one per column
+    List<List<String>> encoderDictionaries(int cols) {
+        List<List<String>> out = new ArrayList<>();
+        for (int c = 0; c < cols; c++) {
+            out.add(c < encoders.length && encoders[c] != null ? encoders[c].words() : Collections.emptyList());
+        }
+        return out;
+    }
+
+    void restoreEncoders(List<List<String>> dicts) {
+        encoders = new StringDictionary[0];
+        for (int c = 0; c < dicts.size(); c++) {
+            List<String> words = dicts.get(c);
+            if (words.isEmpty()) continue;
+            StringDictionary dict = dictionary(c);
+            for (String w : words) dict.insert(w);
+        }
+    }
+
+    /**
+     * Rows are decoded into a reused double[] and appended to primitive column buffers,
+     * so apart from POI's own cell objects nothing is allocated per cell.
+     * Rows shorter than the first data row are padded with 0.0.
+     */
     public Map<String,Object> load(String excelPath) throws Exception {
-        List<double[]> features = new ArrayList<>();
-        List<Integer> labels = new ArrayList<>();
+        return readWorkbook(excelPath).toXY();
+    }
+
+    private FeatureBuffer readWorkbook(String excelPath) throws Exception {
+        FeatureBuffer buf = new FeatureBuffer();
+        double[] vals = new double[64];
 
         try (FileInputStream fis = new FileInputStream(excelPath);
              Workbook wb = new XSSFWorkbook(fis)) {
@@ -36,11 +81,11 @@ public class DatasetReader {
                 if (skipHeader) { skipHeader = false; continue; }
                 int last = row.getLastCellNum();
                 if (last <= 0) continue;
-                List<Double> vals = new ArrayList<>();
+                if (vals.length < last) vals = new double[Math.max(last, vals.length * 2)];
+                int lab = 0;
                 for (int c = 0; c < last; c++) {
                     Cell cell = row.getCell(c, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
                     if (c == last - 1) {
-                        int lab = 0;
                         if (cell != null) {
                             if (cell.getCellType() == CellType.STRING) {
                                 String s = cell.getStringCellValue().trim();
@@ -52,44 +97,122 @@ public class DatasetReader {
                                 lab = s.equalsIgnoreCase("Attack") ? 1 : 0;
                             }
                         }
-                        labels.add(lab);
                     } else {
                         if (cell == null) {
-                            vals.add(0.0);
+                            vals[c] = 0.0;
                         } else if (cell.getCellType() == CellType.NUMERIC) {
-                            vals.add(cell.getNumericCellValue());
+                            vals[c] = cell.getNumericCellValue();
                         } else if (cell.getCellType() == CellType.STRING) {
-                            int code = encode(c, cell.getStringCellValue());
-                            vals.add((double) code);
+                            vals[c] = encode(c, cell.getStringCellValue());
                         } else {
+                            String s = cell.toString();
                             try {
-                                double v = Double.parseDouble(cell.toString().trim());
-                                vals.add(v);
+                                vals[c] = Double.parseDouble(s.trim());
                             } catch (Exception ex) {
-                                int code = encode(c, cell.toString());
-                                vals.add((double) code);
+                                vals[c] = encode(c, s);
                             }
                         }
                     }
                 }
-                double[] arr = new double[vals.size()];
-                for (int i = 0; i < vals.size(); i++) arr[i] = vals.get(i);
-                features.add(arr);
+                buf.addRow(vals, last - 1, lab);
             }
         }
+        return buf;
+    }
 
-        int n = features.size();
-        if (n == 0) throw new RuntimeException("No rows read from Excel");
-        int d = features.get(0).length;
-        double[][] X = new double[n][d];
-        int[] y = new int[n];
-        for (int i = 0; i < n; i++) {
-            X[i] = features.get(i);
-            y[i] = labels.get(i);
+    /**
+     * Same contract as load(...), but reads the first sheet with POI's SAX event model
+     * (XSSFReader + shared strings table). Rows go straight into a primitive buffer,
+     * so memory stays close to the size of the numeric data instead of a full cell DOM.
+     * Rows shorter than the first data row are padded with 0.0.
+     */
+    public Map<String,Object> loadStreaming(String excelPath) throws Exception {
+        return readSheetStreaming(excelPath).toXY();
+    }
+
+    private FeatureBuffer readSheetStreaming(String excelPath) throws Exception {
+        FeatureBuffer buf = new FeatureBuffer();
+        OPCPackage pkg = OPCPackage.open(excelPath, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sst = new ReadOnlySharedStringsTable(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) throw new RuntimeException("No sheets in " + excelPath);
+
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader xml = factory.newSAXParser().getXMLReader();
+            xml.setContentHandler(new XlsxSheetHandler(this, sst, buf));
+            try (InputStream sheet = sheets.next()) {
+                xml.parse(new InputSource(sheet));
+            }
+        } finally {
+            pkg.revert(); // read-only package: close without saving
+        }
+        return buf;
+    }
+
+    /**
+     * Load a CSV/TSV export (header line first, label last) in parallel on the common
+     * ForkJoinPool. String codes are identical to a sequential pass over the file.
+     */
+    public Map<String,Object> loadCsv(String csvPath) throws Exception {
+        return toXY(new CsvLoader(this, ForkJoinPool.commonPool()).loadMatrix(csvPath));
+    }
+
+    /** loadCsv(...) on a dedicated pool with the given parallelism. */
+    public Map<String,Object> loadCsv(String csvPath, int parallelism) throws Exception {
+        try (ForkJoinPool pool = ParallelUtils.pool(parallelism)) {
+            return toXY(new CsvLoader(this, pool).loadMatrix(csvPath));
         }
+    }
+
+    static boolean isDelimitedText(String path) {
+        String lower = path.toLowerCase();
+        return lower.endsWith(".csv") || lower.endsWith(".tsv") || lower.endsWith(".tab");
+    }
+
+    /**
+     * Load through the columnar cache: if excelPath + ".tapdcache" exists and was built from
+     * the same file content (SHA-256), it is memory-mapped and the Excel parse is skipped.
+     * Otherwise the file is parsed (CSV/TSV, streaming or DOM) and the cache is (re)written.
+     */
+    public Map<String,Object> loadCached(String excelPath, boolean streaming) throws Exception {
+        return toXY(loadMatrix(excelPath, streaming, true));
+    }
+
+    /**
+     * Columnar load used by the pipeline. Returns map with "matrix" -> FeatureMatrix and
+     * "labels" -> LabelVector (bit-packed for 0/1 labels). With useCache the matrix is
+     * served from the memory-mapped cache file (off-heap) when the source is unchanged.
+     */
+    public Map<String,Object> loadMatrix(String path, boolean streaming, boolean useCache) throws Exception {
+        if (!useCache) return parseMatrix(path, streaming);
+
+        File cache = DatasetCache.cacheFileFor(path);
+        byte[] hash = DatasetCache.contentHash(new File(path));
+        Map<String,Object> out = DatasetCache.read(cache, hash, this, true);
+        if (out != null) return out;
+
+        out = parseMatrix(path, streaming);
+        FeatureMatrix X = (FeatureMatrix) out.get("matrix");
+        try {
+            DatasetCache.write(cache, hash, X, (LabelVector) out.get("labels"), encoderDictionaries(X.cols()));
+        } catch (Exception ex) {
+            System.err.println("Could not write dataset cache " + cache + ": " + ex.getMessage());
+        }
+        return out;
+    }
+
+    private Map<String,Object> parseMatrix(String path, boolean streaming) throws Exception {
+        if (isDelimitedText(path)) return new CsvLoader(this, ForkJoinPool.commonPool()).loadMatrix(path);
+        return (streaming ? readSheetStreaming(path) : readWorkbook(path)).toMatrix();
+    }
+
+    private static Map<String,Object> toXY(Map<String,Object> columnar) {
         Map<String,Object> out = new HashMap<>();
-        out.put("X", X);
-        out.put("y", y);
+        out.put("X", ((FeatureMatrix) columnar.get("matrix")).toRowArrays());
+        out.put("y", ((LabelVector) columnar.get("labels")).toArray());
         return out;
     }
 
@@ -99,10 +222,7 @@ public class DatasetReader {
      */
     public Map<String,Object> trainTestSplit(double[][] X, int[] y, double trainFraction, long seed) {
         int n = X.length;
-        Integer[] idx = new Integer[n];
-        for (int i = 0; i < n; i++) idx[i] = i;
-        List<Integer> idxList = Arrays.asList(idx);
-        Collections.shuffle(idxList, new Random(seed));
+        List<Integer> idxList = shuffledIds(n, seed);
         int trainSize = (int)Math.round(n * trainFraction);
         double[][] trainX = new double[trainSize][];
         int[] trainY = new int[trainSize];
@@ -125,4 +245,37 @@ public class DatasetReader {
         out.put("testY", testY);
         return out;
     }
+
+    /**
+     * Same split on the columnar types (same shuffle, so the same rows as the double[][] version).
+     * "trainX"/"testX" -> FeatureMatrix, "trainY"/"testY" -> LabelVector, all index views over
+     * X and y (no rows are copied). "trainIdx"/"testIdx" -> int[] row ids into X.
+     */
+    public Map<String,Object> trainTestSplit(FeatureMatrix X, LabelVector y, double trainFraction, long seed) {
+        int n = X.rows();
+        List<Integer> idxList = shuffledIds(n, seed);
+        int trainSize = (int)Math.round(n * trainFraction);
+        int[] train = new int[trainSize];
+        int[] test = new int[n - trainSize];
+        for (int i = 0; i < n; i++) {
+            if (i < trainSize) train[i] = idxList.get(i);
+            else test[i - trainSize] = idxList.get(i);
+        }
+        Map<String,Object> out = new HashMap<>();
+        out.put("trainX", X.view(train));
+        out.put("trainY", y.view(train));
+        out.put("testX", X.view(test));
+        out.put("testY", y.view(test));
+        out.put("trainIdx", train);
+        out.put("testIdx", test);
+        return out;
+    }
+
+    static List<Integer> shuffledIds(int n, long seed) {
+        Integer[] idx = new Integer[n];
+        for (int i = 0; i < n; i++) idx[i] = i;
+        List<Integer> idxList = Arrays.asList(idx);
+        Collections.shuffle(idxList, new Random(seed));
+        return idxList;
+    }
 }
@@ -0,0 +1,87 @@
+package tapd.data;
+
+/**
+ * Allocation-free decimal parsing for the common cases found in spreadsheets and CSV
+ * ("123", "-0.25", "1.5E-3"). Uses the exact fast path (at most 15 digits and a power
+ * of ten up to 1e22, where one IEEE multiply/divide rounds correctly), so results are
+ * bit-identical to Double.parseDouble. Anything else falls back to Double.parseDouble.
+ */
+final class FastDouble {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private FastDouble() {}
+
+    /** Parse s[start, end); throws NumberFormatException like Double.parseDouble. */
+    static double parse(CharSequence s, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) neg = s.charAt(i++) == '-';
+        long mant = 0;
+        int digits = 0, fracDigits = 0;
+        boolean seenDot = false, any = false;
+        for (; i < end; i++) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                any = true;
+                if (mant == 0 && ch == '0') { if (seenDot) fracDigits++; continue; }
+                if (++digits > 15) return slow(s, start, end);
+                mant = mant * 10 + (ch - '0');
+                if (seenDot) fracDigits++;
+            } else if (ch == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) return slow(s, start, end);
+        int exp = 0;
+        if (i < end) {
+            char ch = s.charAt(i);
+            if (ch != 'e' && ch != 'E') return slow(s, start, end);
+            i++;
+            boolean eneg = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) eneg = s.charAt(i++) == '-';
+            if (i == end) return slow(s, start, end);
+            for (; i < end; i++) {
+                ch = s.charAt(i);
+                if (ch < '0' || ch > '9' || exp > 1000) return slow(s, start, end);
+                exp = exp * 10 + (ch - '0');
+            }
+            if (eneg) exp = -exp;
+        }
+        int e10 = exp - fracDigits;
+        double v;
+        if (mant == 0) v = 0.0;
+        else if (e10 >= 0 && e10 <= 22) v = mant * POW10[e10];
+        else if (e10 < 0 && e10 >= -22) v = mant / POW10[-e10];
+        else return slow(s, start, end);
+        return neg ? -v : v;
+    }
+
+    /**
+     * Cheap pre-check so callers can skip the exception path for obvious non-numbers
+     * ("Port#:1", "of:0000..."). True does not guarantee parse(...) succeeds.
+     */
+    static boolean looksNumeric(CharSequence s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') start++;
+        if (start == end) return false;
+        char ch = s.charAt(start);
+        if (ch == '+' || ch == '-') {
+            if (++start == end) return false;
+            ch = s.charAt(start);
+        }
+        return (ch >= '0' && ch <= '9') || ch == '.' || ch == 'N' || ch == 'I';
+    }
+
+    static double parse(CharSequence s) {
+        return parse(s, 0, s.length());
+    }
+
+    private static double slow(CharSequence s, int start, int end) {
+        return Double.parseDouble(s.subSequence(start, end).toString());
+    }
+}
@@ -0,0 +1,71 @@
+package tapd.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Growable primitive column buffers for features plus an int label buffer.
+ * Each feature column is its own double[] (column-major), so adding a row
+ * writes primitives only. Width is fixed by the first row added; shorter rows
+ * are padded with 0.0 (same value a missing cell gets) and extra cells are dropped.
+ */
+class FeatureBuffer {
+    private double[][] columns;
+    private int[] labels = new int[1024];
+    private int width = -1;
+    private int rows = 0;
+
+    void addRow(double[] row, int len, int label) {
+        if (width < 0) {
+            width = len;
+            columns = new double[width][labels.length];
+        }
+        if (rows == labels.length) grow();
+        int n = Math.min(len, width);
+        for (int j = 0; j < n; j++) columns[j][rows] = row[j];
+        for (int j = n; j < width; j++) columns[j][rows] = 0.0;
+        labels[rows++] = label;
+    }
+
+    private void grow() {
+        int cap = labels.length * 2;
+        labels = Arrays.copyOf(labels, cap);
+        for (int j = 0; j < width; j++) columns[j] = Arrays.copyOf(columns[j], cap);
+    }
+
+    int rows() { return rows; }
+
+    int width() { return Math.max(width, 0); }
+
+    /** Backing array of column j (valid for indices < rows()). */
+    double[] column(int j) { return columns[j]; }
+
+    /** Backing label array (valid for indices < rows()). */
+    int[] labels() { return labels; }
+
+    /** Copy into one contiguous FeatureMatrix: map with "matrix" and "labels". */
+    Map<String,Object> toMatrix() {
+        if (rows == 0) throw new RuntimeException("No rows read from Excel");
+        double[] data = new double[Math.multiplyExact(rows, width)];
+        for (int j = 0; j < width; j++) System.arraycopy(columns[j], 0, data, j * rows, rows);
+        Map<String,Object> out = new HashMap<>();
+        out.put("matrix", FeatureMatrix.wrap(data, rows, width));
+        out.put("labels", LabelVector.of(Arrays.copyOf(labels, rows)));
+        return out;
+    }
+
+    /** Build the usual "X"/"y" map returned by DatasetReader.load. */
+    Map<String,Object> toXY() {
+        if (rows == 0) throw new RuntimeException("No rows read from Excel");
+        double[][] X = new double[rows][width];
+        for (int j = 0; j < width; j++) {
+            double[] col = columns[j];
+            for (int i = 0; i < rows; i++) X[i][j] = col[i];
+        }
+        Map<String,Object> out = new HashMap<>();
+        out.put("X", X);
+        out.put("y", Arrays.copyOf(labels, rows));
+        return out;
+    }
+}
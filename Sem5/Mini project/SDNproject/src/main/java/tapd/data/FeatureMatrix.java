@@ -0,0 +1,216 @@
+package tapd.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * n x d feature matrix stored column-major in ONE contiguous block:
+ *   value(i, j) = data[j * rows + i]
+ * Either a heap double[] or an off-heap DoubleBuffer (direct, or memory-mapped
+ * from the dataset cache). Columns are contiguous, so per-feature work
+ * (normalisation, building SMILE columns) is a sequential scan.
+ *
+ * view(idx) returns a row-index view that shares the same storage: splits and
+ * controller partitions cost one int per row instead of a copy of the features.
+ * Writes through a view (set) are visible in the parent and in other views.
+ *
+ * id() is unique per FeatureMatrix object and version() counts writes to the shared
+ * storage (any view's set(...) bumps it), so (id, version) identifies the exact
+ * rows a prediction was made on (see tapd.model.PredictionCache).
+ *
+ * Usage:
+ *   FeatureMatrix X = FeatureMatrix.of(rowsArray);   // from double[][]
+ *   double v = X.get(i, j);
+ *   double[] col = X.column(j);                      // copy of one feature
+ *   FeatureMatrix part = X.view(ids);                // rows ids[0], ids[1], ... (no copy)
+ */
+public final class FeatureMatrix {
+    private final int rows;
+    private final int cols;
+    private final int stride;            // rows of the backing storage (column length)
+    private final int[] index;           // logical row -> storage row, null for a dense matrix
+    private final double[] heap;         // column-major, null when off-heap
+    private final DoubleBuffer offHeap;  // column-major, null when on heap
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+    private final long id = NEXT_ID.incrementAndGet();
+    private final long[] version;        // write counter, shared with every view of the storage
+
+    private FeatureMatrix(int rows, int cols, double[] heap, DoubleBuffer offHeap) {
+        this(rows, cols, rows, null, heap, offHeap, new long[1]);
+    }
+
+    private FeatureMatrix(int rows, int cols, int stride, int[] index, double[] heap, DoubleBuffer offHeap,
+                          long[] version) {
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = stride;
+        this.index = index;
+        this.heap = heap;
+        this.offHeap = offHeap;
+        this.version = version;
+    }
+
+    /** Zero-filled heap matrix. */
+    public static FeatureMatrix allocate(int rows, int cols) {
+        long n = (long) rows * cols;
+        if (n > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Matrix too large: " + rows + "x" + cols);
+        return new FeatureMatrix(rows, cols, new double[(int) n], null);
+    }
+
+    /** Zero-filled matrix outside the Java heap (direct buffer, max 2 GB). */
+    public static FeatureMatrix allocateOffHeap(int rows, int cols) {
+        long bytes = (long) rows * cols * 8;
+        if (bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("Off-heap matrix too large: " + rows + "x" + cols);
+        DoubleBuffer buf = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        return new FeatureMatrix(rows, cols, null, buf);
+    }
+
+    /** Copy a row-major double[][] (rows shorter than the first are padded with 0.0). */
+    public static FeatureMatrix of(double[][] X) {
+        int n = X.length;
+        int d = n > 0 ? X[0].length : 0;
+        FeatureMatrix m = allocate(n, d);
+        for (int i = 0; i < n; i++) {
+            double[] row = X[i];
+            int dj = Math.min(row.length, d);
+            for (int j = 0; j < dj; j++) m.heap[j * n + i] = row[j];
+        }
+        return m;
+    }
+
+    /** Wrap an existing column-major array (no copy). */
+    static FeatureMatrix wrap(double[] columnMajor, int rows, int cols) {
+        if ((long) rows * cols > columnMajor.length) throw new IllegalArgumentException("Array too small");
+        return new FeatureMatrix(rows, cols, columnMajor, null);
+    }
+
+    /** Wrap an existing column-major buffer, e.g. a mapped cache file (no copy). */
+    static FeatureMatrix wrap(DoubleBuffer columnMajor, int rows, int cols) {
+        if ((long) rows * cols > columnMajor.capacity()) throw new IllegalArgumentException("Buffer too small");
+        return new FeatureMatrix(rows, cols, null, columnMajor);
+    }
+
+    public int rows() { return rows; }
+    public int cols() { return cols; }
+    public boolean isOffHeap() { return heap == null; }
+    public boolean isView() { return index != null; }
+
+    /** True when backed by a read-only buffer (e.g. the mapped dataset cache); set(...) would throw. */
+    public boolean isReadOnly() { return offHeap != null && offHeap.isReadOnly(); }
+
+    /** Unique per matrix object (views get their own id). */
+    public long id() { return id; }
+
+    /** Writes so far to the storage shared with this matrix's parent and views. */
+    public long version() { return version[0]; }
+
+    // Called after writing straight into heapArray()
+    void touch() { version[0]++; }
+
+    private int row(int i) { return index == null ? i : index[i]; }
+
+    public double get(int i, int j) {
+        int k = j * stride + row(i);
+        return heap != null ? heap[k] : offHeap.get(k);
+    }
+
+    public void set(int i, int j, double v) {
+        int k = j * stride + row(i);
+        if (heap != null) heap[k] = v;
+        else offHeap.put(k, v);
+        version[0]++;
+    }
+
+    /**
+     * Rows idx[0], idx[1], ... of this matrix as a view over the same storage (no copy).
+     * A view of a view maps straight to the shared storage.
+     */
+    public FeatureMatrix view(int[] idx) {
+        int[] map = new int[idx.length];
+        for (int r = 0; r < idx.length; r++) map[r] = row(idx[r]);
+        return new FeatureMatrix(idx.length, cols, stride, map, heap, offHeap, version);
+    }
+
+    /** Copy of feature column j. */
+    public double[] column(int j) {
+        double[] out = new double[rows];
+        copyColumn(j, out, 0);
+        return out;
+    }
+
+    public void copyColumn(int j, double[] dst, int off) {
+        copyColumn(j, dst, off, 0, rows);
+    }
+
+    /** Copy rows [from, from + len) of column j into dst[off..). */
+    public void copyColumn(int j, double[] dst, int off, int from, int len) {
+        int src = j * stride;
+        if (index == null) {
+            if (heap != null) System.arraycopy(heap, src + from, dst, off, len);
+            else offHeap.get(src + from, dst, off, len);
+        } else if (heap != null) {
+            for (int r = 0; r < len; r++) dst[off + r] = heap[src + index[from + r]];
+        } else {
+            for (int r = 0; r < len; r++) dst[off + r] = offHeap.get(src + index[from + r]);
+        }
+    }
+
+    /** Fill dst[0..cols) with row i. */
+    public void copyRow(int i, double[] dst) {
+        int k0 = row(i);
+        if (heap != null) {
+            for (int j = 0, k = k0; j < cols; j++, k += stride) dst[j] = heap[k];
+        } else {
+            for (int j = 0, k = k0; j < cols; j++, k += stride) dst[j] = offHeap.get(k);
+        }
+    }
+
+    /** New dense heap matrix holding the given rows (gathered column by column). */
+    public FeatureMatrix selectRows(int[] idx) {
+        return view(idx).copy();
+    }
+
+    /** Dense heap copy (materialises a view). */
+    public FeatureMatrix copy() {
+        FeatureMatrix out = allocate(rows, cols);
+        for (int j = 0; j < cols; j++) copyColumn(j, out.heap, j * rows);
+        return out;
+    }
+
+    /** Dense copy in a direct (off-heap) buffer. */
+    public FeatureMatrix toOffHeap() {
+        FeatureMatrix out = allocateOffHeap(rows, cols);
+        double[] col = new double[rows];
+        for (int j = 0; j < cols; j++) {
+            copyColumn(j, col, 0);
+            out.offHeap.put(j * rows, col, 0, rows);
+        }
+        return out;
+    }
+
+    /** Row-major copy, for code that still takes double[][]. */
+    public double[][] toRowArrays() {
+        double[][] X = new double[rows][cols];
+        double[] col = new double[rows];
+        for (int j = 0; j < cols; j++) {
+            copyColumn(j, col, 0);
+            for (int i = 0; i < rows; i++) X[i][j] = col[i];
+        }
+        return X;
+    }
+
+    /**
+     * Backing heap array (column-major, column length rows()) for tight loops in tapd.data;
+     * null when off-heap or a view.
+     */
+    double[] heapArray() { return index == null ? heap : null; }
+
+    @Override
+    public String toString() {
+        return "FeatureMatrix{" + rows + "x" + cols + (heap == null ? ", off-heap" : "")
+                + (index != null ? ", view of " + stride + " rows" : "") + "}";
+    }
+}
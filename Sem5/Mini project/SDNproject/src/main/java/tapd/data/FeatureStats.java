@@ -0,0 +1,122 @@
+package tapd.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Per-feature running statistics (count, mean, sum of squared deviations M2).
+ * Built in one pass with Welford's update and combined with Chan et al.'s pairwise
+ * merge, so partial stats from row blocks, threads or whole controllers can be
+ * merged without the raw rows. Plain public fields: Gson / Java serialisation ready.
+ *
+ * Usage:
+ *   FeatureStats s = FeatureStats.compute(X, ForkJoinPool.commonPool());
+ *   FeatureStats global = s.merge(otherControllerStats);
+ *   double[] sd = global.std();
+ */
+public class FeatureStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Rows per parallel block; blocks are merged in row order so results are repeatable. */
+    static final int BLOCK_ROWS = 16384;
+
+    public long count;
+    public double[] mean;
+    public double[] m2;
+
+    public FeatureStats() {
+        this(0);
+    }
+
+    public FeatureStats(int cols) {
+        mean = new double[cols];
+        m2 = new double[cols];
+    }
+
+    public int cols() { return mean.length; }
+
+    /** Welford pass over rows [from, to) of X, one column at a time (columns are contiguous). */
+    public static FeatureStats ofRows(FeatureMatrix X, int from, int to) {
+        int d = X.cols();
+        FeatureStats s = new FeatureStats(d);
+        s.count = to - from;
+        double[] heap = X.heapArray();
+        double[] col = heap == null ? new double[to - from] : null;
+        for (int j = 0; j < d; j++) {
+            double[] src;
+            int off;
+            if (heap != null) {
+                src = heap;
+                off = j * X.rows();
+            } else {
+                X.copyColumn(j, col, 0, from, to - from);
+                src = col;
+                off = -from;
+            }
+            double m = 0.0, q = 0.0;
+            long k = 0;
+            for (int i = from; i < to; i++) {
+                double x = src[off + i];
+                double delta = x - m;
+                m += delta / ++k;
+                q += delta * (x - m);
+            }
+            s.mean[j] = m;
+            s.m2[j] = q;
+        }
+        return s;
+    }
+
+    /** Stats of all rows of X, computed in row blocks on the given pool. */
+    public static FeatureStats compute(FeatureMatrix X, ForkJoinPool pool) {
+        int n = X.rows();
+        if (n <= BLOCK_ROWS) return ofRows(X, 0, n);
+        List<ForkJoinTask<FeatureStats>> tasks = new ArrayList<>();
+        for (int from = 0; from < n; from += BLOCK_ROWS) {
+            int a = from, b = Math.min(n, from + BLOCK_ROWS);
+            tasks.add(pool.submit(() -> ofRows(X, a, b)));
+        }
+        FeatureStats total = new FeatureStats(X.cols());
+        for (ForkJoinTask<FeatureStats> t : tasks) total = total.merge(t.join());
+        return total;
+    }
+
+    /** Chan et al. pairwise combination; returns a new object, neither input is changed. */
+    public FeatureStats merge(FeatureStats o) {
+        if (o.count == 0) return copy();
+        if (count == 0) return o.copy();
+        if (o.cols() != cols()) throw new IllegalArgumentException("Feature count mismatch: " + cols() + " vs " + o.cols());
+        FeatureStats out = new FeatureStats(cols());
+        out.count = count + o.count;
+        double na = count, nb = o.count, n = out.count;
+        for (int j = 0; j < cols(); j++) {
+            double delta = o.mean[j] - mean[j];
+            out.mean[j] = mean[j] + delta * (nb / n);
+            out.m2[j] = m2[j] + o.m2[j] + delta * delta * (na * nb / n);
+        }
+        return out;
+    }
+
+    public FeatureStats copy() {
+        FeatureStats out = new FeatureStats(cols());
+        out.count = count;
+        System.arraycopy(mean, 0, out.mean, 0, cols());
+        System.arraycopy(m2, 0, out.m2, 0, cols());
+        return out;
+    }
+
+    /** Population standard deviation per feature. */
+    public double[] std() {
+        double[] sd = new double[cols()];
+        for (int j = 0; j < sd.length; j++) sd[j] = count == 0 ? 0.0 : Math.sqrt(m2[j] / count);
+        return sd;
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureStats{count=" + count + ", features=" + cols() + "}";
+    }
+}
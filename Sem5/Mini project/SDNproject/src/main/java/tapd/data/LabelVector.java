@@ -0,0 +1,137 @@
+package tapd.data;
+
+import java.util.Arrays;
+
+/**
+ * Class labels for a FeatureMatrix. Binary labels (0/1, the normal/attack case)
+ * are packed one bit per row in a long[]; anything else falls back to int[].
+ * Setting a non-binary value on a packed vector switches it to int[] storage.
+ *
+ * view(idx) and overlay() give copy-on-write vectors: they read through to the
+ * parent until their first set(...), which copies just their own rows into private
+ * storage. A poisoned controller therefore pays for its own labels only, and the
+ * parent (and every other view) never sees the flips.
+ */
+public final class LabelVector {
+    private final int size;
+    private long[] bits;        // binary storage, null when general or still shared
+    private int[] values;       // general storage, null when binary or still shared
+    private LabelVector parent; // shared source until the first write, else null
+    private int[] index;        // row -> parent row, null for the identity mapping
+
+    private LabelVector(int size, long[] bits, int[] values) {
+        this.size = size;
+        this.bits = bits;
+        this.values = values;
+    }
+
+    private LabelVector(LabelVector parent, int[] index, int size) {
+        this.size = size;
+        this.parent = parent;
+        this.index = index;
+    }
+
+    public static LabelVector of(int[] y) {
+        boolean binary = true;
+        for (int v : y) if (v != 0 && v != 1) { binary = false; break; }
+        if (!binary) return new LabelVector(y.length, null, Arrays.copyOf(y, y.length));
+        long[] bits = new long[(y.length + 63) >>> 6];
+        for (int i = 0; i < y.length; i++) if (y[i] == 1) bits[i >>> 6] |= 1L << i;
+        return new LabelVector(y.length, bits, null);
+    }
+
+    /** All-zero binary vector. */
+    public static LabelVector zeros(int size) {
+        return new LabelVector(size, new long[(size + 63) >>> 6], null);
+    }
+
+    public int size() { return size; }
+
+    public boolean isBinary() { return parent != null ? parent.isBinary() : bits != null; }
+
+    /** True while this vector still reads through to shared parent storage. */
+    public boolean isShared() { return parent != null; }
+
+    public int get(int i) {
+        if (parent != null) return parent.get(index == null ? i : index[i]);
+        if (bits != null) return (int) (bits[i >>> 6] >>> i) & 1;
+        return values[i];
+    }
+
+    /**
+     * Rows idx[0], idx[1], ... as a copy-on-write view (no copy until written).
+     * Views of shared views point straight at the storage owner.
+     */
+    public LabelVector view(int[] idx) {
+        if (parent == null) return new LabelVector(this, Arrays.copyOf(idx, idx.length), idx.length);
+        int[] map = new int[idx.length];
+        for (int r = 0; r < idx.length; r++) map[r] = index == null ? idx[r] : index[idx[r]];
+        return new LabelVector(parent, map, idx.length);
+    }
+
+    /** Copy-on-write view of all rows, e.g. a controller's training labels before poisoning. */
+    public LabelVector overlay() {
+        if (parent == null) return new LabelVector(this, null, size);
+        return new LabelVector(parent, index, size);
+    }
+
+    public void set(int i, int v) {
+        if (parent != null) detach();
+        if (bits != null) {
+            if (v == 1) { bits[i >>> 6] |= 1L << i; return; }
+            if (v == 0) { bits[i >>> 6] &= ~(1L << i); return; }
+            values = toArray();
+            bits = null;
+        }
+        values[i] = v;
+    }
+
+    // Copy-on-write: take private storage for this vector's rows (packed when the parent is)
+    private void detach() {
+        LabelVector src = parent;
+        if (src.isBinary()) {
+            long[] b = new long[(size + 63) >>> 6];
+            for (int i = 0; i < size; i++) if (get(i) == 1) b[i >>> 6] |= 1L << i;
+            bits = b;
+        } else {
+            int[] vals = new int[size];
+            for (int i = 0; i < size; i++) vals[i] = get(i);
+            values = vals;
+        }
+        parent = null;
+        index = null;
+    }
+
+    /** Labels as int[] (copy). */
+    public int[] toArray() {
+        if (parent == null && values != null) return Arrays.copyOf(values, size);
+        int[] out = new int[size];
+        for (int i = 0; i < size; i++) out[i] = get(i);
+        return out;
+    }
+
+    /** Private copy of the given rows. */
+    public LabelVector select(int[] idx) {
+        LabelVector out = isBinary() ? zeros(idx.length) : new LabelVector(idx.length, null, new int[idx.length]);
+        for (int r = 0; r < idx.length; r++) out.set(r, get(idx[r]));
+        return out;
+    }
+
+    /** Private copy (materialises a shared view). */
+    public LabelVector copy() {
+        if (parent != null) {
+            LabelVector out = overlay();
+            out.detach();
+            return out;
+        }
+        return new LabelVector(size,
+                bits == null ? null : Arrays.copyOf(bits, bits.length),
+                values == null ? null : Arrays.copyOf(values, values.length));
+    }
+
+    /** Approximate storage owned by this vector in bytes (for cost reports); shared views count their index only. */
+    public long sizeInBytes() {
+        if (parent != null) return index == null ? 0L : index.length * 4L;
+        return bits != null ? bits.length * 8L : values.length * 4L;
+    }
+}
@@ -1,6 +1,7 @@
 package tapd.data;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Simple z-score preprocessor (student-friendly).
@@ -11,6 +12,14 @@ import java.util.Arrays;
  *   Preprocessor p = new Preprocessor();
  *   double[][] Xnorm = p.fitTransform(trainX);
  *   double[][] testNorm = p.transform(testX);
+ * The FeatureMatrix overloads do the same work one contiguous column at a time.
+ *
+ * fitParallel(...) is the single-pass version: Welford per row block on a
+ * ForkJoinPool, blocks merged with Chan's formula (see FeatureStats). The same
+ * merge combines stats from several controllers:
+ *   FeatureStats global = statsA.merge(statsB);
+ *   p.fit(global);
+ *   p.transformInPlace(X);   // no output matrix allocated
  */
 public class Preprocessor {
     private double[] mean = null;
@@ -82,6 +91,116 @@ public class Preprocessor {
         return transform(X);
     }
 
+    // Fit on a column-major FeatureMatrix (same sums in the same order as fit(double[][]))
+    public void fit(FeatureMatrix X) {
+        int n = X.rows();
+        int d = X.cols();
+        if (n == 0) {
+            mean = new double[0];
+            std = new double[0];
+            fitted = true;
+            return;
+        }
+        mean = new double[d];
+        std = new double[d];
+        double[] col = new double[n];
+        for (int j = 0; j < d; j++) {
+            X.copyColumn(j, col, 0);
+            double s = 0.0;
+            for (int i = 0; i < n; i++) s += col[i];
+            mean[j] = s / n;
+            double s2 = 0.0;
+            for (int i = 0; i < n; i++) {
+                double diff = col[i] - mean[j];
+                s2 += diff * diff;
+            }
+            std[j] = Math.sqrt(s2 / n);
+            if (std[j] == 0.0) std[j] = 1.0;
+        }
+        fitted = true;
+    }
+
+    // Transform into a new heap FeatureMatrix
+    public FeatureMatrix transform(FeatureMatrix X) {
+        if (!fitted) throw new IllegalStateException("Preprocessor not fitted. Call fit(...) or fitTransform(...) first.");
+        int n = X.rows();
+        int d = X.cols();
+        FeatureMatrix out = FeatureMatrix.allocate(n, d);
+        double[] dst = out.heapArray();
+        for (int j = 0; j < d; j++) {
+            X.copyColumn(j, dst, j * n);
+            if (j >= mean.length) continue;   // extra features copied as-is
+            double m = mean[j], sd = std[j];
+            for (int k = j * n, end = k + n; k < end; k++) dst[k] = (dst[k] - m) / sd;
+        }
+        return out;
+    }
+
+    public FeatureMatrix fitTransform(FeatureMatrix X) {
+        fit(X);
+        return transform(X);
+    }
+
+    // Single pass, parallel over row blocks (common pool); returns the stats used
+    public FeatureStats fitParallel(FeatureMatrix X) {
+        return fitParallel(X, ForkJoinPool.commonPool());
+    }
+
+    public FeatureStats fitParallel(FeatureMatrix X, ForkJoinPool pool) {
+        FeatureStats s = FeatureStats.compute(X, pool);
+        fit(s);
+        return s;
+    }
+
+    // Fit from (possibly merged) statistics; same zero-std rule as fit(...)
+    public void fit(FeatureStats s) {
+        mean = Arrays.copyOf(s.mean, s.cols());
+        std = s.std();
+        for (int j = 0; j < std.length; j++) if (std[j] == 0.0) std[j] = 1.0;
+        fitted = true;
+    }
+
+    // Normalise X in place (through a view this rewrites the shared rows); returns X
+    public FeatureMatrix transformInPlace(FeatureMatrix X) {
+        if (!fitted) throw new IllegalStateException("Preprocessor not fitted. Call fit(...) or fitTransform(...) first.");
+        if (X.isReadOnly()) throw new IllegalArgumentException("Cannot normalise a read-only matrix in place: " + X);
+        int n = X.rows();
+        int d = Math.min(X.cols(), mean.length);
+        double[] data = X.heapArray();
+        for (int j = 0; j < d; j++) {
+            double m = mean[j], sd = std[j];
+            if (data != null) {
+                for (int k = j * n, end = k + n; k < end; k++) data[k] = (data[k] - m) / sd;
+            } else {
+                for (int i = 0; i < n; i++) X.set(i, j, (X.get(i, j) - m) / sd);
+            }
+        }
+        if (data != null) X.touch();
+        return X;
+    }
+
+    // Undo transformInPlace (used before re-normalising with new statistics); returns X
+    public FeatureMatrix inverseTransformInPlace(FeatureMatrix X) {
+        if (!fitted) throw new IllegalStateException("Preprocessor not fitted. Call fit(...) or fitTransform(...) first.");
+        int n = X.rows();
+        int d = Math.min(X.cols(), mean.length);
+        for (int j = 0; j < d; j++) {
+            double m = mean[j], sd = std[j];
+            for (int i = 0; i < n; i++) X.set(i, j, X.get(i, j) * sd + m);
+        }
+        return X;
+    }
+
+    // Row-major in-place version
+    public double[][] transformInPlace(double[][] X) {
+        if (!fitted) throw new IllegalStateException("Preprocessor not fitted. Call fit(...) or fitTransform(...) first.");
+        for (double[] row : X) {
+            int dj = Math.min(row.length, mean.length);
+            for (int j = 0; j < dj; j++) row[j] = (row[j] - mean[j]) / std[j];
+        }
+        return X;
+    }
+
     // Optional getters for debugging / printing
     public double[] getMean() { return mean == null ? new double[0] : Arrays.copyOf(mean, mean.length); }
     public double[] getStd()  { return std == null ? new double[0] : Arrays.copyOf(std, std.length); }
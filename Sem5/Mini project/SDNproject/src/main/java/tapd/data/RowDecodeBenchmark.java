@@ -0,0 +1,133 @@
+package tapd.data;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Micro-benchmark for the per-row decode loop of DatasetReader.
+ * Compares the previous boxed path (List<Double> per row, List<Integer> labels,
+ * Map<Integer, Map<String,Integer>> encoders) with the primitive path
+ * (reused double[] row, FastDouble, StringDictionary, FeatureBuffer columns).
+ *
+ * Cells are synthetic typed values (numeric text and categorical strings, like UNR-IDD)
+ * taken from a pre-built pool, so only decoding cost is measured, not spreadsheet I/O.
+ *
+ * Usage: java tapd.data.RowDecodeBenchmark [rows=1000000] [cols=32] [rounds=5]
+ */
+public class RowDecodeBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        String[][] pool = buildPool(4096, cols, new Random(42));
+        System.out.println("=== Row decode benchmark: rows=" + rows + " cols=" + cols + " ===");
+
+        // warm-up both paths
+        legacy(pool, Math.min(rows, 200_000));
+        primitive(pool, Math.min(rows, 200_000));
+
+        for (int r = 0; r < rounds; r++) {
+            report("boxed    ", () -> legacy(pool, rows));
+            report("primitive", () -> primitive(pool, rows));
+        }
+    }
+
+    // ---- previous implementation (boxed lists + nested map encoders) ----
+    static double[][] legacy(String[][] pool, int rows) {
+        Map<Integer, Map<String, Integer>> encoders = new HashMap<>();
+        List<double[]> features = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        for (int r = 0; r < rows; r++) {
+            String[] row = pool[r % pool.length];
+            int last = row.length;
+            List<Double> vals = new ArrayList<>();
+            for (int c = 0; c < last; c++) {
+                String s = row[c];
+                if (c == last - 1) {
+                    labels.add(s.trim().equalsIgnoreCase("Attack") ? 1 : 0);
+                } else {
+                    if (isNumericColumn(c)) {
+                        vals.add(Double.parseDouble(s));
+                    } else {
+                        String k = s.trim();
+                        encoders.putIfAbsent(c, new HashMap<>());
+                        Map<String, Integer> map = encoders.get(c);
+                        if (!map.containsKey(k)) map.put(k, map.size());
+                        vals.add((double) map.get(k));
+                    }
+                }
+            }
+            double[] arr = new double[vals.size()];
+            for (int i = 0; i < vals.size(); i++) arr[i] = vals.get(i);
+            features.add(arr);
+        }
+        return features.toArray(new double[0][]);
+    }
+
+    // ---- current implementation (primitive buffers + dictionaries) ----
+    static double[][] primitive(String[][] pool, int rows) {
+        DatasetReader reader = new DatasetReader();
+        FeatureBuffer buf = new FeatureBuffer();
+        double[] vals = new double[pool[0].length];
+        for (int r = 0; r < rows; r++) {
+            String[] row = pool[r % pool.length];
+            int last = row.length;
+            for (int c = 0; c < last - 1; c++) {
+                String s = row[c];
+                vals[c] = isNumericColumn(c) ? FastDouble.parse(s) : reader.encode(c, s);
+            }
+            buf.addRow(vals, last - 1, row[last - 1].trim().equalsIgnoreCase("Attack") ? 1 : 0);
+        }
+        return new double[][]{buf.column(0)};
+    }
+
+    // columns 0 and 1 hold switch / port identifiers, the rest are numeric counters
+    private static boolean isNumericColumn(int c) {
+        return c > 1;
+    }
+
+    private static String[][] buildPool(int n, int cols, Random rnd) {
+        String[] ports = {"Port#:1", "Port#:2", "Port#:3", "Port#:4"};
+        String[] switches = {"of:000000000000000c", "of:000000000000000a", "of:0000000000000003"};
+        String[][] pool = new String[n][cols];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < cols - 1; c++) {
+                if (c == 0) pool[i][c] = switches[rnd.nextInt(switches.length)];
+                else if (c == 1) pool[i][c] = ports[rnd.nextInt(ports.length)];
+                else if (c % 3 == 0) pool[i][c] = String.valueOf(rnd.nextInt(100_000));
+                else pool[i][c] = String.valueOf(Math.round(rnd.nextDouble() * 1e6) / 1e3);
+            }
+            pool[i][cols - 1] = rnd.nextInt(4) == 0 ? "Attack" : "Normal";
+        }
+        return pool;
+    }
+
+    private static void report(String name, Runnable work) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long gcCount0 = 0, gcTime0 = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount0 += Math.max(0, gc.getCollectionCount());
+            gcTime0 += Math.max(0, gc.getCollectionTime());
+        }
+        long alloc0 = threads.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+
+        work.run();
+
+        long t1 = System.nanoTime();
+        long alloc1 = threads.getThreadAllocatedBytes(tid);
+        long gcCount1 = 0, gcTime1 = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount1 += Math.max(0, gc.getCollectionCount());
+            gcTime1 += Math.max(0, gc.getCollectionTime());
+        }
+        System.out.printf("%s time=%7.1f ms  allocated=%8.1f MB  gcCount=%3d  gcTime=%5d ms%n",
+                name, (t1 - t0) / 1e6, (alloc1 - alloc0) / (1024.0 * 1024.0),
+                gcCount1 - gcCount0, gcTime1 - gcTime0);
+    }
+}
@@ -4,7 +4,8 @@ import java.util.*;
 
 /**
  * Split training set into N controller-local parts (nearly equal).
- * Returns List of Map{ "X"->double[][], "y"->int[] } for each controller.
+ * Returns List of Map{ "X"->double[][], "y"->int[] } for each controller
+ * (or FeatureMatrix / LabelVector index views for the columnar overload).
  */
 public class Splitter {
 
@@ -35,4 +36,25 @@ public class Splitter {
         }
         return parts;
     }
+
+    // Columnar version: same shuffle, parts are views sharing X's storage (no row copies)
+    public List<Map<String,Object>> split(FeatureMatrix X, LabelVector y, int N, long seed) {
+        int n = X.rows();
+        List<Integer> idlist = DatasetReader.shuffledIds(n, seed);
+
+        List<Map<String,Object>> parts = new ArrayList<>();
+        int base = n / N;
+        int rem = n % N;
+        int pos = 0;
+        for (int i = 0; i < N; i++) {
+            int size = base + (i < rem ? 1 : 0);
+            int[] ids = new int[size];
+            for (int j = 0; j < size; j++) ids[j] = idlist.get(pos++);
+            Map<String,Object> m = new HashMap<>();
+            m.put("X", X.view(ids));
+            m.put("y", y.view(ids));
+            parts.add(m);
+        }
+        return parts;
+    }
 }
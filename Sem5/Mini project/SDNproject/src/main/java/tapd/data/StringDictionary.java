@@ -0,0 +1,79 @@
+package tapd.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * String -> int code dictionary for one column (codes 0,1,2,... in first-seen order).
+ * Open addressing over primitive arrays: no Integer boxing, and lookups of an
+ * already-known value allocate nothing (the trim is done on index bounds, a new
+ * String is only created when a value is inserted).
+ * Keys are trimmed, matching the original encode(col, s) behaviour.
+ */
+class StringDictionary {
+    private String[] keys = new String[16];   // hash table slots
+    private int[] codes = new int[16];
+    private String[] words = new String[8];   // code -> word
+    private int size = 0;
+
+    int encode(CharSequence s) {
+        int start = 0, end = s.length();
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        int len = end - start;
+
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + s.charAt(i);   // == trimmed.hashCode()
+        int mask = keys.length - 1;
+        int slot = mix(h) & mask;
+        while (keys[slot] != null) {
+            String k = keys[slot];
+            if (k.length() == len && k.hashCode() == h && sameChars(k, s, start, len)) return codes[slot];
+            slot = (slot + 1) & mask;
+        }
+        String key = (s instanceof String && start == 0 && end == s.length())
+                ? (String) s : s.subSequence(start, end).toString();
+        return insert(key);
+    }
+
+    private static boolean sameChars(String k, CharSequence s, int start, int len) {
+        if (s instanceof String) return ((String) s).regionMatches(start, k, 0, len);
+        for (int i = 0; i < len; i++) if (k.charAt(i) != s.charAt(start + i)) return false;
+        return true;
+    }
+
+    int size() { return size; }
+
+    String word(int code) { return words[code]; }
+
+    /** Words in code order (index = code). */
+    List<String> words() { return Arrays.asList(Arrays.copyOf(words, size)); }
+
+    // add pre-trimmed key with the next code
+    int insert(String key) {
+        if ((size + 1) * 2 > keys.length) rehash();
+        int code = size++;
+        if (code == words.length) words = Arrays.copyOf(words, code * 2);
+        words[code] = key;
+        place(key, code);
+        return code;
+    }
+
+    private void place(String key, int code) {
+        int mask = keys.length - 1;
+        int slot = mix(key.hashCode()) & mask;
+        while (keys[slot] != null) slot = (slot + 1) & mask;
+        keys[slot] = key;
+        codes[slot] = code;
+    }
+
+    private void rehash() {
+        keys = new String[keys.length * 2];
+        codes = new int[keys.length];
+        for (int c = 0; c < size; c++) place(words[c], c);
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+}
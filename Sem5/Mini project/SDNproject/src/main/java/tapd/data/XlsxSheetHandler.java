@@ -0,0 +1,230 @@
+package tapd.data;
+
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SAX handler for one worksheet XML part (sheetN.xml).
+ * Rebuilds each row in small reusable arrays and pushes it into a FeatureBuffer,
+ * so no Row/Cell objects are created; numbers are parsed straight from the
+ * character buffer and shared strings are decoded once per index.
+ * Cell handling mirrors DatasetReader.load:
+ *  - first row is the header and is skipped
+ *  - last present cell of a row is the label ("Attack"->1, numeric -> rounded)
+ *  - blank/missing feature cells -> 0.0, numeric -> value, string -> encode(col, s)
+ *  - other types (formula, boolean, error) use the text cell.toString() would give:
+ *    parsed as a number if possible, otherwise encoded.
+ * Shared-formula followers reuse the master formula text (references are not shifted).
+ */
+class XlsxSheetHandler extends DefaultHandler {
+
+    private static final byte EMPTY = 0, NUMERIC = 1, STRING = 2, OTHER = 3;
+
+    private final DatasetReader reader;
+    private final ReadOnlySharedStringsTable sst;
+    private final FeatureBuffer out;
+
+    // current row, indexed by column
+    private byte[] kind = new byte[64];
+    private double[] num = new double[64];
+    private String[] text = new String[64];
+    private double[] scratch = new double[64];
+    private int lastCellNum;      // same meaning as Row.getLastCellNum()
+    private boolean headerSkipped = false;
+
+    // current cell
+    private int col;
+    private String type;
+    private boolean hasValue, hasFormula;
+    private boolean inValue, inFormula, inInline, inInlineText;
+    private String sharedIndex;
+    private final StringBuilder value = new StringBuilder();
+    private final StringBuilder formula = new StringBuilder();
+    private final Map<String,String> sharedFormulas = new HashMap<>();
+    // decoded shared strings by index (getItemAt builds a new rich-text object per call)
+    private String[] sstCache = new String[256];
+
+    XlsxSheetHandler(DatasetReader reader, ReadOnlySharedStringsTable sst, FeatureBuffer out) {
+        this.reader = reader;
+        this.sst = sst;
+        this.out = out;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attrs) {
+        switch (localName) {
+            case "row":
+                lastCellNum = 0;
+                col = -1;
+                break;
+            case "c":
+                String ref = attrs.getValue("r");
+                col = (ref != null) ? columnIndex(ref) : col + 1;
+                type = attrs.getValue("t");
+                hasValue = false;
+                hasFormula = false;
+                sharedIndex = null;
+                value.setLength(0);
+                formula.setLength(0);
+                break;
+            case "v":
+                inValue = true;
+                hasValue = true;
+                break;
+            case "f":
+                inFormula = true;
+                hasFormula = true;
+                if ("shared".equals(attrs.getValue("t"))) sharedIndex = attrs.getValue("si");
+                break;
+            case "is":
+                inInline = true;
+                break;
+            case "t":
+                if (inInline) { inInlineText = true; hasValue = true; }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (inValue || inInlineText) value.append(ch, start, length);
+        else if (inFormula) formula.append(ch, start, length);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        switch (localName) {
+            case "v": inValue = false; break;
+            case "t": inInlineText = false; break;
+            case "is": inInline = false; break;
+            case "f":
+                inFormula = false;
+                if (sharedIndex != null) {
+                    if (formula.length() > 0) sharedFormulas.put(sharedIndex, formula.toString());
+                    else formula.append(sharedFormulas.getOrDefault(sharedIndex, ""));
+                }
+                break;
+            case "c": finishCell(); break;
+            case "row": finishRow(); break;
+            default: break;
+        }
+    }
+
+    private void finishCell() {
+        ensureCapacity(col + 1);
+        lastCellNum = Math.max(lastCellNum, col + 1);
+        if (hasFormula) {
+            kind[col] = OTHER;
+            text[col] = formula.toString();
+            return;
+        }
+        String t = (type == null) ? "n" : type;
+        switch (t) {
+            case "s":
+                kind[col] = STRING;
+                text[col] = hasValue ? sharedString(parseIndex(value)) : "";
+                break;
+            case "inlineStr":
+            case "str":
+                kind[col] = STRING;
+                text[col] = value.toString();
+                break;
+            case "b":
+                kind[col] = OTHER;
+                text[col] = (value.length() == 1 && value.charAt(0) == '1') ? "TRUE" : "FALSE";
+                break;
+            case "e":
+                kind[col] = OTHER;
+                text[col] = value.toString();
+                break;
+            default:
+                if (!hasValue) {
+                    kind[col] = EMPTY;   // BLANK -> treated as missing
+                } else {
+                    kind[col] = NUMERIC;
+                    num[col] = value.length() == 0 ? 0.0 : FastDouble.parse(value);
+                }
+                break;
+        }
+    }
+
+    private void finishRow() {
+        int last = lastCellNum;
+        if (!headerSkipped) {
+            headerSkipped = true;
+        } else if (last > 0) {
+            int lab = 0;
+            int lc = last - 1;
+            if (kind[lc] == NUMERIC) {
+                lab = (int) Math.round(num[lc]);
+            } else if (kind[lc] != EMPTY) {
+                lab = text[lc].trim().equalsIgnoreCase("Attack") ? 1 : 0;
+            }
+            for (int c = 0; c < lc; c++) {
+                switch (kind[c]) {
+                    case NUMERIC: scratch[c] = num[c]; break;
+                    case STRING: scratch[c] = reader.encode(c, text[c]); break;
+                    case OTHER:
+                        try {
+                            scratch[c] = Double.parseDouble(text[c].trim());
+                        } catch (NumberFormatException ex) {
+                            scratch[c] = reader.encode(c, text[c]);
+                        }
+                        break;
+                    default: scratch[c] = 0.0; break;
+                }
+            }
+            out.addRow(scratch, lc, lab);
+        }
+        if (last > 0) {
+            Arrays.fill(kind, 0, last, EMPTY);
+            Arrays.fill(text, 0, last, null);
+        }
+    }
+
+    private String sharedString(int idx) {
+        if (idx >= sstCache.length) sstCache = Arrays.copyOf(sstCache, Math.max(idx + 1, sstCache.length * 2));
+        String str = sstCache[idx];
+        if (str == null) {
+            str = sst.getItemAt(idx).getString();
+            sstCache[idx] = str;
+        }
+        return str;
+    }
+
+    private static int parseIndex(CharSequence v) {
+        int idx = 0;
+        for (int i = 0; i < v.length(); i++) {
+            char ch = v.charAt(i);
+            if (ch >= '0' && ch <= '9') idx = idx * 10 + (ch - '0');
+        }
+        return idx;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= kind.length) return;
+        int cap = Math.max(n, kind.length * 2);
+        kind = Arrays.copyOf(kind, cap);
+        num = Arrays.copyOf(num, cap);
+        text = Arrays.copyOf(text, cap);
+        scratch = Arrays.copyOf(scratch, cap);
+    }
+
+    // "AB12" -> 27
+    private static int columnIndex(String ref) {
+        int c = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch < 'A' || ch > 'Z') break;
+            c = c * 26 + (ch - 'A' + 1);
+        }
+        return c - 1;
+    }
+}
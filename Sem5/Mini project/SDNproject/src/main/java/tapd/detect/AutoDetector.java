@@ -1,6 +1,8 @@
 // put under src/main/java/tapd/detect/AutoDetector.java
 package tapd.detect;
 
+import tapd.util.StatsUtils;
+
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -35,8 +37,8 @@ public class AutoDetector {
         if (n == 0) return Collections.emptySet();
 
         // Compute Q1, Q3 (using simple median of halves)
-        double q1 = percentile(vals, 25.0);
-        double q3 = percentile(vals, 75.0);
+        double q1 = StatsUtils.percentileExclusive(vals, 25.0);
+        double q3 = StatsUtils.percentileExclusive(vals, 75.0);
         double iqr = q3 - q1;
         double outlierCut = q3 + iqrMultiplier * iqr;
 
@@ -61,15 +63,4 @@ public class AutoDetector {
 
         return suspects;
     }
-
-    // simple percentile (linear interpolation) for sorted array
-    private static double percentile(double[] sorted, double p) {
-        if (sorted == null || sorted.length == 0) return 0.0;
-        double pos = p * (sorted.length + 1) / 100.0;
-        if (pos <= 1) return sorted[0];
-        if (pos >= sorted.length) return sorted[sorted.length - 1];
-        int idx = (int) pos;
-        double delta = pos - idx;
-        return sorted[idx - 1] + delta * (sorted[idx] - sorted[idx - 1]);
-    }
 }
@@ -17,6 +17,19 @@ public class CommandCenter {
         return out;
     }
 
+    // Same strategies on vote rates (Voter.voteRates): any > 0, majority >= 1/2, n_div_3 >= 1/3
+    public Set<Integer> decideSuspectsByRate(Map<Integer,Double> rates, String strategy) {
+        Set<Integer> out = new HashSet<>();
+        double threshold;
+        switch (strategy.toLowerCase()) {
+            case "majority": threshold = 0.5; break;
+            case "any": threshold = Double.MIN_VALUE; break;
+            default: threshold = 1.0 / 3.0; break;
+        }
+        for (Map.Entry<Integer,Double> e : rates.entrySet()) if (e.getValue() >= threshold) out.add(e.getKey());
+        return out;
+    }
+
     public Map<String,Integer> computeDetectionStats(Set<Integer> detected, Set<Integer> truth) {
         Map<String,Integer> stats = new HashMap<>();
         Set<Integer> tp = new HashSet<>(detected); tp.retainAll(truth);
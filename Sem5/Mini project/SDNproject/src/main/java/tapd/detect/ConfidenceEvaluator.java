@@ -1,5 +1,11 @@
 package tapd.detect;
 
+import smile.classification.RandomForest;
+import tapd.data.FeatureMatrix;
+import tapd.model.ErrorMatrix;
+import tapd.model.Evaluator;
+import tapd.model.PredictionCache;
+
 import java.util.*;
 
 public class ConfidenceEvaluator {
@@ -17,4 +23,51 @@ public class ConfidenceEvaluator {
         }
         return confidence;
     }
+
+    // Same scores from the precomputed row means of an ErrorMatrix.
+    // A source with no observed cells (model never fetched / every call timed out) gets 0.
+    public static double[] computeConfidence(ErrorMatrix errors) {
+        int N = errors.rows();
+        double[] confidence = new double[N];
+        for (int i = 0; i < N; i++) {
+            if (errors.rowCount(i) == 0) continue;
+            confidence[i] = Math.max(0, 1 - errors.rowMean(i)); // higher = better
+        }
+        return confidence;
+    }
+
+    /**
+     * CBMF on a sparse matrix: for each controller, the confidence of the sources that voted
+     * against it divided by the confidence of all sources that evaluated it (0..1).
+     * confidence usually comes from computeConfidence(errors), i.e. observed cells only.
+     */
+    public static Map<Integer, Double> weightedVoteRates(List<Set<Integer>> votes, double[] confidence, ErrorMatrix errors) {
+        Map<Integer, Double> out = new HashMap<>();
+        for (int d = 0; d < errors.cols(); d++) {
+            double seen = 0.0, against = 0.0;
+            for (int s = 0; s < errors.rows(); s++) {
+                if (!errors.isObserved(s, d)) continue;
+                seen += confidence[s];
+                if (votes.get(s).contains(d)) against += confidence[s];
+            }
+            if (seen > 0) out.put(d, against / seen);
+        }
+        return out;
+    }
+
+    /**
+     * Average vote share of the predicted class for model i on Xs.get(i) (its own data).
+     * Reads the evaluator's PredictionCache, so after the transfer step this predicts nothing.
+     */
+    public static double[] computeVoteConfidence(Evaluator eval, List<RandomForest> models, List<FeatureMatrix> Xs) {
+        int N = models.size();
+        double[] confidence = new double[N];
+        for (int i = 0; i < N; i++) {
+            PredictionCache.Entry e = eval.predictions(models.get(i), Xs.get(i));
+            double sum = 0.0;
+            for (int r = 0; r < e.rows; r++) sum += e.confidence(r);
+            confidence[i] = e.rows == 0 ? 0.0 : sum / e.rows;
+        }
+        return confidence;
+    }
 }
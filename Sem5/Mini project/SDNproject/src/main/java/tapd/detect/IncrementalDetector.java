@@ -0,0 +1,180 @@
+package tapd.detect;
+
+import smile.classification.RandomForest;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+import tapd.model.ErrorMatrix;
+import tapd.model.Evaluator;
+
+import java.util.*;
+
+/**
+ * Keeps the detection state (errors matrix, per-source IQR thresholds, per-source votes,
+ * vote frequencies, CBMF confidences and weighted frequencies) so that when ONE
+ * controller changes only its part is recomputed:
+ *
+ *   updateModel(k, m)      new model of k  -> row k re-evaluated (N evaluations),
+ *                                             votes and confidence of source k redone
+ *   updateData(k, X, y)    new data of k   -> column k re-evaluated (N evaluations),
+ *                                             every source re-votes from its stored row
+ *   update(k, m, X, y)     both            -> 2N - 1 evaluations
+ *
+ * Vote frequencies are adjusted by removing the old votes of a source and adding the
+ * new ones; weighted frequencies are summed from the stored votes and confidences (in
+ * source order, so they match CommandCenterApp exactly).
+ *
+ * Every update returns Map{ "suspects", "added", "removed", "autoSuspects", "evaluations" };
+ * "added"/"removed" compare the suspect set (decideSuspects with strategy) before and
+ * after the update.
+ *
+ * Usage:
+ *   IncrementalDetector inc = new IncrementalDetector(evaluator, models, localsX, localsY, errors, eta, "any");
+ *   Map<String,Object> r = inc.updateModel(3, retrainedModel);
+ */
+public class IncrementalDetector {
+    public double fallbackFrac = 0.6;     // AutoDetector parameters, as in CommandCenterApp
+    public double iqrMultiplier = 1.5;
+
+    private final double eta;             // IQR multiplier of every source's threshold
+    private final String strategy;        // CommandCenter.decideSuspects strategy
+    private final Evaluator eval;
+    private final OutlierDetector od = new OutlierDetector();
+    private final CommandCenter cc = new CommandCenter();
+    private final List<RandomForest> models;
+    private final List<FeatureMatrix> Xs;
+    private final List<LabelVector> ys;
+    private final ErrorMatrix errors;
+    private final int N;
+
+    private final double[] omega;            // IQR threshold per source
+    private final List<Set<Integer>> votes;  // suspects per source
+    private final int[] freq;                // votes received per controller
+    private final double[] confidence;       // CBMF confidence per source
+    private Set<Integer> suspects;
+    private long evaluations;
+
+    /**
+     * errors must be the full N x N matrix of these models on these datasets (it is kept
+     * and updated in place); pass null to compute it here. eta and strategy are fixed for
+     * the detector's lifetime, so the initial votes and suspects use the same ones as updates.
+     */
+    public IncrementalDetector(Evaluator eval, List<RandomForest> models,
+                               List<FeatureMatrix> Xs, List<LabelVector> ys, ErrorMatrix errors,
+                               double eta, String strategy) {
+        this.eta = eta;
+        this.strategy = strategy;
+        this.eval = eval;
+        this.models = new ArrayList<>(models);
+        this.Xs = new ArrayList<>(Xs);
+        this.ys = new ArrayList<>(ys);
+        this.N = models.size();
+        if (Xs.size() != N || ys.size() != N) throw new IllegalArgumentException("Need one dataset per model");
+        if (errors == null) {
+            errors = new ErrorMatrix(N, N);
+            for (int s = 0; s < N; s++) for (int d = 0; d < N; d++) evaluate(errors, s, d);
+        } else if (errors.rows() != N || errors.cols() != N) {
+            throw new IllegalArgumentException("errors must be " + N + "x" + N + ": " + errors);
+        }
+        this.errors = errors;
+        omega = new double[N];
+        votes = new ArrayList<>();
+        for (int s = 0; s < N; s++) votes.add(Collections.emptySet());
+        freq = new int[N];
+        confidence = new double[N];
+        for (int s = 0; s < N; s++) revote(s);
+        suspects = cc.decideSuspects(freqMap(), N, strategy);
+    }
+
+    /** Controller k published a new model: row k only. */
+    public Map<String,Object> updateModel(int k, RandomForest model) {
+        long before = evaluations;
+        models.set(k, model);
+        for (int d = 0; d < N; d++) evaluate(errors, k, d);
+        revote(k);
+        return result(before);
+    }
+
+    /** Controller k has new local data: column k, then every source re-votes. */
+    public Map<String,Object> updateData(int k, FeatureMatrix X, LabelVector y) {
+        long before = evaluations;
+        Xs.set(k, X);
+        ys.set(k, y);
+        for (int s = 0; s < N; s++) evaluate(errors, s, k);
+        for (int s = 0; s < N; s++) revote(s);
+        return result(before);
+    }
+
+    /** New model and new data of controller k: row k and column k. */
+    public Map<String,Object> update(int k, RandomForest model, FeatureMatrix X, LabelVector y) {
+        long before = evaluations;
+        models.set(k, model);
+        Xs.set(k, X);
+        ys.set(k, y);
+        for (int d = 0; d < N; d++) evaluate(errors, k, d);
+        for (int s = 0; s < N; s++) if (s != k) evaluate(errors, s, k);
+        for (int s = 0; s < N; s++) revote(s);
+        return result(before);
+    }
+
+    private void evaluate(ErrorMatrix m, int s, int d) {
+        m.set(s, d, eval.computeError(models.get(s), Xs.get(d), ys.get(d)));
+        evaluations++;
+    }
+
+    // Recompute source s's threshold, votes and confidence; patch the frequencies
+    private void revote(int s) {
+        for (int d : votes.get(s)) freq[d]--;
+        ErrorMatrix.View row = errors.row(s);
+        omega[s] = od.threshold(row, eta);
+        Set<Integer> mine = new HashSet<>();
+        for (int d = 0; d < N; d++) if (row.get(d) > omega[s]) mine.add(d);
+        votes.set(s, mine);
+        confidence[s] = Math.max(0, 1 - errors.rowMean(s));
+        for (int d : mine) freq[d]++;
+    }
+
+    private Map<String,Object> result(long evaluationsBefore) {
+        Set<Integer> now = cc.decideSuspects(freqMap(), N, strategy);
+        Set<Integer> added = new TreeSet<>(now);
+        added.removeAll(suspects);
+        Set<Integer> removed = new TreeSet<>(suspects);
+        removed.removeAll(now);
+        suspects = now;
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("suspects", new TreeSet<>(now));
+        out.put("added", added);
+        out.put("removed", removed);
+        out.put("autoSuspects", new TreeSet<>(autoSuspects()));
+        out.put("evaluations", evaluations - evaluationsBefore);
+        return out;
+    }
+
+    /** Vote frequencies as Voter.aggregateVotes would return them (controllers with votes only). */
+    public Map<Integer,Integer> freqMap() {
+        Map<Integer,Integer> m = new HashMap<>();
+        for (int d = 0; d < N; d++) if (freq[d] > 0) m.put(d, freq[d]);
+        return m;
+    }
+
+    /** Confidence-weighted frequencies as in CommandCenterApp (controllers with votes only). */
+    public Map<Integer,Double> weightedFreq() {
+        Map<Integer,Double> m = new HashMap<>();
+        for (int s = 0; s < N; s++) {
+            for (int d : votes.get(s)) m.put(d, m.getOrDefault(d, 0.0) + confidence[s]);
+        }
+        return m;
+    }
+
+    public Set<Integer> autoSuspects() {
+        return AutoDetector.detectByIQRThenTopK(weightedFreq(), fallbackFrac, iqrMultiplier);
+    }
+
+    public Set<Integer> suspects() { return Collections.unmodifiableSet(suspects); }
+    public List<Set<Integer>> votes() { return Collections.unmodifiableList(votes); }
+    public double[] confidence() { return confidence.clone(); }
+    public double threshold(int s) { return omega[s]; }
+    public ErrorMatrix errors() { return errors; }
+
+    /** Evaluations (model x dataset) run so far, including the initial matrix if built here. */
+    public long evaluations() { return evaluations; }
+}
@@ -1,26 +1,168 @@
 package tapd.detect;
 
+import tapd.model.ErrorMatrix;
+import tapd.util.QuantileSketch;
 import tapd.util.StatsUtils;
 import java.util.*;
 
 /**
  * IQR outlier detection with MAD fallback.
+ *
+ * Quartiles and MAD come from StatsUtils.summary (one quickselect pass); rows longer
+ * than sketchThreshold use a QuantileSketch instead.
  */
 public class OutlierDetector {
 
+    public int sketchThreshold = 4096;          // rows with more cells are summarised by a sketch
+    public int sketchK = QuantileSketch.DEFAULT_K;
+
     public Set<Integer> detectIQROutliers(List<Double> fsr, double eta) {
         Set<Integer> suspects = new HashSet<>();
         if (fsr == null || fsr.isEmpty()) return suspects;
-        double q25 = StatsUtils.percentile(fsr, 25.0);
-        double q75 = StatsUtils.percentile(fsr, 75.0);
+        double[] vals = new double[fsr.size()];
+        for (int i = 0; i < vals.length; i++) vals[i] = fsr.get(i);
+        double omega = threshold(vals, eta);
+        for (int i = 0; i < fsr.size(); i++) if (fsr.get(i) > omega) suspects.add(i);
+        return suspects;
+    }
+
+    // Same rule on one row of an ErrorMatrix; unobserved (NaN) cells are ignored
+    public Set<Integer> detectIQROutliers(ErrorMatrix.View fsr, double eta) {
+        Set<Integer> suspects = new HashSet<>();
+        double[] vals = fsr.observed();
+        if (vals.length == 0) return suspects;
+        double omega = threshold(vals, eta);
+        for (int i = 0; i < fsr.size(); i++) if (fsr.get(i) > omega) suspects.add(i);
+        return suspects;
+    }
+
+    /**
+     * Votes of every source on a sparse (partially observed) matrix, e.g. from gossip rounds.
+     * A row with at least minObserved observed cells uses its own IQR threshold; sparser rows
+     * use the threshold of all observed cells (per-row sketches merged into one).
+     */
+    public List<Set<Integer>> detectSparseOutliers(ErrorMatrix errors, double eta, int minObserved) {
+        QuantileSketch all = new QuantileSketch(sketchK);
+        for (int s = 0; s < errors.rows(); s++) all.merge(QuantileSketch.of(errors.row(s).observed(), sketchK));
+        double global = all.count() == 0 ? Double.POSITIVE_INFINITY : threshold(all, eta);
+        List<Set<Integer>> votes = new ArrayList<>();
+        for (int s = 0; s < errors.rows(); s++) {
+            ErrorMatrix.View row = errors.row(s);
+            if (errors.rowCount(s) >= minObserved) {
+                votes.add(detectIQROutliers(row, eta));
+            } else {
+                Set<Integer> suspects = new HashSet<>();
+                for (int d = 0; d < row.size(); d++) if (row.get(d) > global) suspects.add(d);
+                votes.add(suspects);
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * detectSparseOutliers for a round that ended with missing cells (timeouts, controllers
+     * down), plus what was missing. Map keys: "votes" (List<Set<Integer>>), "missingCells"
+     * (List<int[]> {source, destination}), "fallbackRows" (sources below minObserved that
+     * used the global threshold), "emptyRows" (sources with no observed cell, no votes).
+     */
+    public Map<String,Object> detectPartialOutliers(ErrorMatrix errors, double eta, int minObserved) {
+        List<Integer> fallback = new ArrayList<>(), empty = new ArrayList<>();
+        for (int s = 0; s < errors.rows(); s++) {
+            int n = errors.rowCount(s);
+            if (n == 0) empty.add(s);
+            else if (n < minObserved) fallback.add(s);
+        }
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("votes", detectSparseOutliers(errors, eta, minObserved));
+        out.put("missingCells", errors.missingCells());
+        out.put("fallbackRows", fallback);
+        out.put("emptyRows", empty);
+        return out;
+    }
+
+    /**
+     * For estimated errors (early-stopping transfers): the IQR threshold comes from the
+     * point estimates, but a destination is only flagged when the LOWER end of its
+     * interval is above it, i.e. it is an outlier even in the most favourable case.
+     * Exact cells (no interval) behave as in detectIQROutliers.
+     */
+    public Set<Integer> detectConfidentOutliers(ErrorMatrix.View fsr, double eta) {
+        Set<Integer> suspects = new HashSet<>();
+        double[] vals = fsr.observed();
+        if (vals.length == 0) return suspects;
+        double omega = threshold(vals, eta);
+        for (int i = 0; i < fsr.size(); i++) if (fsr.lower(i) > omega) suspects.add(i);
+        return suspects;
+    }
+
+    /**
+     * How well a cheaper errors matrix (coreset, early stopping) reproduces the per-source
+     * IQR votes of the full one. Map keys: "sources", "identicalSources" (rows with exactly
+     * the same suspects), "cells", "agreeingCells" (suspect / not-suspect decisions that match),
+     * "cellAgreement" (fraction).
+     */
+    public Map<String,Object> compareDetections(ErrorMatrix full, ErrorMatrix approx, double eta) {
+        int sources = full.rows(), identical = 0, cells = 0, agreeing = 0;
+        for (int s = 0; s < sources; s++) {
+            Set<Integer> a = detectIQROutliers(full.row(s), eta);
+            Set<Integer> b = approx.hasIntervals()
+                    ? detectConfidentOutliers(approx.row(s), eta)
+                    : detectIQROutliers(approx.row(s), eta);
+            if (a.equals(b)) identical++;
+            for (int d = 0; d < full.cols(); d++) {
+                cells++;
+                if (a.contains(d) == b.contains(d)) agreeing++;
+            }
+        }
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("sources", sources);
+        out.put("identicalSources", identical);
+        out.put("cells", cells);
+        out.put("agreeingCells", agreeing);
+        out.put("cellAgreement", cells == 0 ? 1.0 : (double) agreeing / cells);
+        return out;
+    }
+
+    /**
+     * IQR threshold from a sketch alone (e.g. merged from several partial rows). With a
+     * zero IQR at least half the values are equal, so the MAD fallback is taken as 0.
+     */
+    public double threshold(QuantileSketch sketch, double eta) {
+        double q25 = sketch.quantile(0.25);
+        double q75 = sketch.quantile(0.75);
+        return q75 + (q75 - q25) * eta;
+    }
+
+    /** Outlier threshold of one errors row (observed cells); +Infinity when none are observed. */
+    public double threshold(ErrorMatrix.View fsr, double eta) {
+        double[] vals = fsr.observed();
+        return vals.length == 0 ? Double.POSITIVE_INFINITY : threshold(vals, eta);
+    }
+
+    // Q3 + eta * IQR, or Q3 + eta * MAD when the IQR is 0
+    private double threshold(double[] vals, double eta) {
+        double q25, q75, mad;
+        if (vals.length > sketchThreshold) {
+            QuantileSketch s = QuantileSketch.of(vals, sketchK);
+            q25 = s.quantile(0.25);
+            q75 = s.quantile(0.75);
+            if (q75 - q25 != 0.0) return q75 + (q75 - q25) * eta;
+            double med = s.quantile(0.5);
+            QuantileSketch dev = new QuantileSketch(sketchK);
+            for (double v : vals) dev.add(Math.abs(v - med));
+            mad = dev.quantile(0.5);
+        } else {
+            double[] st = StatsUtils.summary(vals);
+            q25 = st[StatsUtils.Q1];
+            q75 = st[StatsUtils.Q3];
+            mad = st[StatsUtils.MAD];
+        }
         double iqr = q75 - q25;
         double omega = q75 + iqr * eta;
         if (iqr == 0.0) {
-            double mad = StatsUtils.mad(fsr);
             omega = q75 + mad * eta;
         }
-        for (int i = 0; i < fsr.size(); i++) if (fsr.get(i) > omega) suspects.add(i);
-        return suspects;
+        return omega;
     }
 }
 
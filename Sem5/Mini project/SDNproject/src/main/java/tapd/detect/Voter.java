@@ -1,5 +1,7 @@
 package tapd.detect;
 
+import tapd.model.ErrorMatrix;
+
 import java.util.*;
 
 /** Aggregate votes into frequency map. */
@@ -9,4 +11,19 @@ public class Voter {
         for (Set<Integer> s : votes) for (Integer id : s) freq.put(id, freq.getOrDefault(id,0)+1);
         return freq;
     }
+
+    /**
+     * Sparse version: votes received divided by the number of sources that evaluated the
+     * controller (observed cells of its column), so controllers seen by fewer peers are
+     * not under-counted. Controllers never observed are left out.
+     */
+    public Map<Integer,Double> voteRates(List<Set<Integer>> votes, ErrorMatrix errors) {
+        Map<Integer,Integer> freq = aggregateVotes(votes);
+        Map<Integer,Double> rates = new HashMap<>();
+        for (int d = 0; d < errors.cols(); d++) {
+            int observers = errors.colCount(d);
+            if (observers > 0) rates.put(d, (double) freq.getOrDefault(d, 0) / observers);
+        }
+        return rates;
+    }
 }
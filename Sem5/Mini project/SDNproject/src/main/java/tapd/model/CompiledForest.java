@@ -0,0 +1,296 @@
+package tapd.model;
+
+import smile.base.cart.DecisionNode;
+import smile.base.cart.InternalNode;
+import smile.base.cart.NominalNode;
+import smile.base.cart.Node;
+import smile.base.cart.OrdinalNode;
+import smile.classification.DecisionTree;
+import smile.classification.RandomForest;
+import tapd.data.FeatureMatrix;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * A trained SMILE RandomForest flattened into one struct-of-arrays node table.
+ *
+ * Nodes of every tree are stored in pre-order, so an internal node's "true" child
+ * (x <= threshold, or x == value for nominal splits) is always the next slot and
+ * only the "false" child needs an offset:
+ *   node = x[feature[node]] <= threshold[node] ? node + 1 : falseChild[node]
+ * Leaves have feature == -1 and their class in leafClass. Prediction is a majority
+ * vote over trees with ties going to the lowest class, as RandomForest.predict does.
+ *
+ * Batch prediction works on blocks of BLOCK rows: the block is gathered row-major
+ * once, then each tree walks all rows of the block before the next tree, which
+ * keeps one tree's nodes hot in cache. No allocation happens per row or per tree.
+ *
+ * Usage:
+ *   CompiledForest cf = CompiledForest.compile(model);
+ *   int[] pred = cf.predict(X);
+ *   int bad = cf.verify(model, testX);   // must be 0
+ */
+public final class CompiledForest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int BLOCK = 256;
+
+    static final byte LEAF = 0, ORDINAL = 1, NOMINAL = 2;
+
+    // package-private for ForestCodec
+    final int[] roots;        // first node of each tree
+    final byte[] op;          // LEAF / ORDINAL / NOMINAL
+    final int[] feature;      // split feature, -1 for leaves
+    final double[] threshold; // split value (nominal: the category code)
+    final int[] falseChild;   // node index of the "false" branch
+    final int[] leafClass;    // class of a leaf, -1 for internal nodes
+    final int numClasses;
+    private final int numFeatures;    // 1 + largest feature index used
+
+    CompiledForest(int[] roots, byte[] op, int[] feature, double[] threshold,
+                   int[] falseChild, int[] leafClass, int numClasses) {
+        this.roots = roots;
+        this.op = op;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.falseChild = falseChild;
+        this.leafClass = leafClass;
+        this.numClasses = numClasses;
+        int maxF = -1;
+        for (int f : feature) maxF = Math.max(maxF, f);
+        this.numFeatures = maxF + 1;
+    }
+
+    /** Flatten the forest. Throws IllegalArgumentException for node types it does not know. */
+    public static CompiledForest compile(RandomForest model) {
+        DecisionTree[] trees = model.trees();
+        Builder b = new Builder();
+        int[] roots = new int[trees.length];
+        for (int t = 0; t < trees.length; t++) roots[t] = b.add(trees[t].root());
+        return b.build(roots);
+    }
+
+    public int numTrees() { return roots.length; }
+    public int numNodes() { return op.length; }
+    public int numClasses() { return numClasses; }
+    public int numFeatures() { return numFeatures; }
+
+    /** Bytes held by the node arrays (for cache limits and cost reports). */
+    public long sizeInBytes() {
+        return roots.length * 4L + op.length * (1L + 4 + 8 + 4 + 4);
+    }
+
+    /** Class predicted by one tree for a row. */
+    int predictTree(int tree, double[] x, int off) {
+        int node = roots[tree];
+        byte o;
+        while ((o = op[node]) != LEAF) {
+            double v = x[off + feature[node]];
+            boolean left = o == ORDINAL ? v <= threshold[node] : v == threshold[node];
+            node = left ? node + 1 : falseChild[node];
+        }
+        return leafClass[node];
+    }
+
+    /** Majority vote for one row. */
+    public int predict(double[] x) {
+        int[] votes = new int[numClasses];
+        for (int t = 0; t < roots.length; t++) votes[predictTree(t, x, 0)]++;
+        return argMax(votes, 0);
+    }
+
+    public int[] predict(FeatureMatrix X) {
+        int[] out = new int[X.rows()];
+        predict(X, out);
+        return out;
+    }
+
+    /** Predict every row of X into out[0..rows). */
+    public void predict(FeatureMatrix X, int[] out) {
+        predict(X, 0, X.rows(), out);
+    }
+
+    /** Predict rows [from, from + len) of X into out[0..len). */
+    public void predict(FeatureMatrix X, int from, int len, int[] out) {
+        int d = X.cols();
+        checkWidth(d);
+        int block = Math.min(BLOCK, Math.max(1, len));
+        double[] rows = new double[block * d];   // row-major block
+        double[] col = new double[block];
+        int[] votes = new int[block * numClasses];
+        for (int done = 0; done < len; done += block) {
+            int m = Math.min(block, len - done);
+            gatherBlock(X, from + done, m, rows, col);
+            predictBlock(rows, d, m, votes, out, done);
+        }
+    }
+
+    /** Predictions and vote shares for every row of X, tagged with X's current version. */
+    PredictionCache.Entry predictEntry(FeatureMatrix X) {
+        long version = X.version();
+        int n = X.rows(), d = X.cols();
+        checkWidth(d);
+        PredictionCache.Entry e = new PredictionCache.Entry(n, numClasses, version);
+        int block = Math.min(BLOCK, Math.max(1, n));
+        double[] rows = new double[block * d];
+        double[] col = new double[block];
+        int[] votes = new int[block * numClasses];
+        int[] pred = new int[block];
+        for (int done = 0; done < n; done += block) {
+            int m = Math.min(block, n - done);
+            gatherBlock(X, done, m, rows, col);
+            predictBlock(rows, d, m, votes, pred, 0);
+            e.fill(done, m, pred, votes, numClasses, roots.length);
+        }
+        return e;
+    }
+
+    /** Copy rows [from, from + len) of X row-major into rows (col is scratch of at least len). */
+    static void gatherBlock(FeatureMatrix X, int from, int len, double[] rows, double[] col) {
+        int d = X.cols();
+        for (int j = 0; j < d; j++) {
+            X.copyColumn(j, col, 0, from, len);
+            for (int r = 0; r < len; r++) rows[r * d + j] = col[r];
+        }
+    }
+
+    public int[] predict(double[][] X) {
+        int n = X.length;
+        int[] out = new int[n];
+        if (n == 0) return out;
+        int d = X[0].length;
+        checkWidth(d);
+        int block = Math.min(BLOCK, n);
+        double[] rows = new double[block * d];
+        int[] votes = new int[block * numClasses];
+        for (int from = 0; from < n; from += block) {
+            int len = Math.min(block, n - from);
+            for (int r = 0; r < len; r++) {
+                double[] src = X[from + r];
+                int m = Math.min(d, src.length);
+                System.arraycopy(src, 0, rows, r * d, m);
+                if (m < d) Arrays.fill(rows, r * d + m, (r + 1) * d, 0.0);
+            }
+            predictBlock(rows, d, len, votes, out, from);
+        }
+        return out;
+    }
+
+    // Tree-outer, row-inner over one gathered block, then vote (votes needs len * numClasses)
+    void predictBlock(double[] rows, int d, int len, int[] votes, int[] out, int outOff) {
+        int k = numClasses;
+        Arrays.fill(votes, 0, len * k, 0);
+        for (int t = 0; t < roots.length; t++) {
+            for (int r = 0; r < len; r++) votes[r * k + predictTree(t, rows, r * d)]++;
+        }
+        for (int r = 0; r < len; r++) out[outOff + r] = argMax(votes, r * k);
+    }
+
+    private int argMax(int[] votes, int off) {
+        int best = 0;
+        for (int c = 1; c < numClasses; c++) if (votes[off + c] > votes[off + best]) best = c;
+        return best;
+    }
+
+    private void checkWidth(int d) {
+        if (d < numFeatures) throw new IllegalArgumentException("Forest uses " + numFeatures + " features, matrix has " + d);
+    }
+
+    /** Number of rows where this forest disagrees with SMILE's own predict (0 = identical). */
+    public int verify(RandomForest model, FeatureMatrix X) {
+        int[] mine = predict(X);
+        int[] ref = new Evaluator().predictSmile(model, X);
+        int bad = 0;
+        for (int i = 0; i < ref.length; i++) if (mine[i] != ref[i]) bad++;
+        return bad;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledForest{trees=" + roots.length + ", nodes=" + op.length + ", classes=" + numClasses + "}";
+    }
+
+    // ---- flattening ----
+
+    private static final class Builder {
+        private byte[] op = new byte[1024];
+        private int[] feature = new int[1024];
+        private double[] threshold = new double[1024];
+        private int[] falseChild = new int[1024];
+        private int[] leafClass = new int[1024];
+        private int size = 0;
+        private int maxClass = 1;
+        private Field ordinalValue, nominalValue;
+
+        // Pre-order: node, then its true subtree, then its false subtree
+        int add(Node node) {
+            int id = size++;
+            if (id == op.length) grow();
+            if (node instanceof DecisionNode) {
+                int c = ((DecisionNode) node).output();
+                op[id] = LEAF;
+                feature[id] = -1;
+                leafClass[id] = c;
+                maxClass = Math.max(maxClass, c);
+                return id;
+            }
+            if (!(node instanceof InternalNode)) {
+                throw new IllegalArgumentException("Unsupported tree node: " + node.getClass().getName());
+            }
+            InternalNode in = (InternalNode) node;
+            feature[id] = in.feature();
+            leafClass[id] = -1;
+            if (node instanceof OrdinalNode) {
+                op[id] = ORDINAL;
+                if (ordinalValue == null) ordinalValue = valueField(OrdinalNode.class);
+                threshold[id] = splitValue(node, ordinalValue);
+            } else if (node instanceof NominalNode) {
+                op[id] = NOMINAL;
+                if (nominalValue == null) nominalValue = valueField(NominalNode.class);
+                threshold[id] = splitValue(node, nominalValue);
+            } else {
+                throw new IllegalArgumentException("Unsupported split node: " + node.getClass().getName());
+            }
+            add(in.trueChild());
+            int f = add(in.falseChild());   // may grow the arrays: assign only after the call
+            falseChild[id] = f;
+            return id;
+        }
+
+        private void grow() {
+            int cap = op.length * 2;
+            op = Arrays.copyOf(op, cap);
+            feature = Arrays.copyOf(feature, cap);
+            threshold = Arrays.copyOf(threshold, cap);
+            falseChild = Arrays.copyOf(falseChild, cap);
+            leafClass = Arrays.copyOf(leafClass, cap);
+        }
+
+        CompiledForest build(int[] roots) {
+            return new CompiledForest(roots, Arrays.copyOf(op, size), Arrays.copyOf(feature, size),
+                    Arrays.copyOf(threshold, size), Arrays.copyOf(falseChild, size),
+                    Arrays.copyOf(leafClass, size), maxClass + 1);
+        }
+    }
+
+    // SMILE keeps the split value in a package-private field "value" (double or int)
+    private static Field valueField(Class<?> type) {
+        try {
+            Field f = type.getDeclaredField("value");
+            f.setAccessible(true);
+            return f;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new IllegalArgumentException("Cannot access split value of " + type.getSimpleName() + ": " + ex);
+        }
+    }
+
+    private static double splitValue(Node node, Field f) {
+        try {
+            return ((Number) f.get(node)).doubleValue();
+        } catch (IllegalAccessException ex) {
+            throw new IllegalArgumentException("Cannot read split value: " + ex);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package tapd.model;
+
+import tapd.util.StatsUtils;
+
+/**
+ * Settings for sequential (early-stopping) error estimation.
+ *
+ * Rows of the destination are scored in shuffled mini-batches of batchSize. After
+ * each batch a two-sided interval on the error rate is computed; scoring stops once
+ * its half-width is at most halfWidth (and at least minSamples rows were scored),
+ * or when the data runs out (then the error is exact).
+ *
+ * Looking at the interval after every batch would inflate the miss rate, so look k
+ * uses confidence delta / (k (k + 1)); the sum over all looks stays below delta and
+ * the final interval holds with probability at least 1 - delta.
+ */
+public class EarlyStopPolicy {
+
+    public enum Bound { WILSON, HOEFFDING }
+
+    public Bound bound = Bound.WILSON;
+    public double halfWidth = 0.01;   // stop when (upper - lower) / 2 <= halfWidth
+    public double delta = 0.05;       // overall miss probability of the interval
+    public int batchSize = 512;
+    public int minSamples = 1024;
+    public long seed = 42L;           // row shuffle
+
+    /** {lower, upper} after observing `wrong` errors in n rows at look k (1-based). */
+    public double[] interval(int wrong, int n, int look) {
+        double d = delta / ((double) look * (look + 1));
+        double p = (double) wrong / n;
+        if (bound == Bound.HOEFFDING) {
+            double h = Math.sqrt(Math.log(2.0 / d) / (2.0 * n));
+            return new double[]{Math.max(0.0, p - h), Math.min(1.0, p + h)};
+        }
+        double z = StatsUtils.normalQuantile(1.0 - d / 2.0);
+        double z2 = z * z;
+        double denom = 1.0 + z2 / n;
+        double center = (p + z2 / (2.0 * n)) / denom;
+        double half = z / denom * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+        return new double[]{Math.max(0.0, center - half), Math.min(1.0, center + half)};
+    }
+
+    @Override
+    public String toString() {
+        return "EarlyStopPolicy{" + bound + ", halfWidth=" + halfWidth + ", delta=" + delta
+                + ", batch=" + batchSize + ", min=" + minSamples + "}";
+    }
+}
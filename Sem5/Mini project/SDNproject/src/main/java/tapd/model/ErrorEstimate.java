@@ -0,0 +1,28 @@
+package tapd.model;
+
+/**
+ * Error rate of one model on one dataset with the interval it is known to within.
+ * exact() when every row was scored (lower == error == upper).
+ */
+public class ErrorEstimate {
+    public final double error;
+    public final double lower;
+    public final double upper;
+    public final int samples;   // rows scored
+    public final int total;     // rows available
+
+    public ErrorEstimate(double error, double lower, double upper, int samples, int total) {
+        this.error = error;
+        this.lower = lower;
+        this.upper = upper;
+        this.samples = samples;
+        this.total = total;
+    }
+
+    public boolean exact() { return samples == total; }
+
+    @Override
+    public String toString() {
+        return String.format("%.4f [%.4f, %.4f] n=%d/%d", error, lower, upper, samples, total);
+    }
+}
@@ -0,0 +1,271 @@
+package tapd.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Transfer errors errors[source][destination] in one flat row-major double[]
+ * (8 bytes per cell, no boxing). NaN marks a cell that was not observed; the
+ * aggregates skip such cells.
+ *
+ * Cells filled from an ErrorEstimate also keep its interval and sample count
+ * (lower/upper/samples); cells without one report lower == upper == value.
+ *
+ * row(s) / col(d) are views over the same array (no copy). Row and column sums,
+ * counts and means are computed in one pass the first time they are asked for and
+ * cached until the next set(...).
+ *
+ * Usage:
+ *   ErrorMatrix E = new ErrorMatrix(N, N);
+ *   E.set(s, d, err);
+ *   double avg = E.rowMean(s);          // average transfer error of source s
+ *   ErrorMatrix.View fsr = E.row(s);    // zero-copy row for the detectors
+ */
+public final class ErrorMatrix {
+    private final int rows;
+    private final int cols;
+    private final double[] data;
+    private double[] lower, upper;   // per-cell interval, null until first used
+    private int[] samples;
+
+    // cached aggregates, null when stale
+    private double[] rowSum, colSum;
+    private int[] rowCount, colCount;
+
+    public ErrorMatrix(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.data = new double[Math.multiplyExact(rows, cols)];
+    }
+
+    /** Matrix with every cell unobserved (NaN), for sparse or partial evaluation. */
+    public static ErrorMatrix unobserved(int rows, int cols) {
+        ErrorMatrix m = new ErrorMatrix(rows, cols);
+        Arrays.fill(m.data, Double.NaN);
+        return m;
+    }
+
+    /** Copy of a List<List<Double>> matrix (null cells become NaN). */
+    public static ErrorMatrix of(List<List<Double>> errors) {
+        int r = errors.size();
+        int c = 0;
+        for (List<Double> row : errors) c = Math.max(c, row.size());
+        ErrorMatrix m = new ErrorMatrix(r, c);
+        Arrays.fill(m.data, Double.NaN);
+        for (int i = 0; i < r; i++) {
+            List<Double> row = errors.get(i);
+            for (int j = 0; j < row.size(); j++) {
+                Double v = row.get(j);
+                if (v != null) m.data[i * c + j] = v;
+            }
+        }
+        return m;
+    }
+
+    /** Copy of a double[][] matrix (rows must have equal length). */
+    public static ErrorMatrix of(double[][] errors) {
+        int r = errors.length;
+        int c = r == 0 ? 0 : errors[0].length;
+        ErrorMatrix m = new ErrorMatrix(r, c);
+        for (int i = 0; i < r; i++) System.arraycopy(errors[i], 0, m.data, i * c, c);
+        return m;
+    }
+
+    public int rows() { return rows; }
+    public int cols() { return cols; }
+
+    public double get(int s, int d) { return data[s * cols + d]; }
+
+    public void set(int s, int d, double v) {
+        data[s * cols + d] = v;
+        rowSum = null;
+    }
+
+    /** Store an estimate together with its interval. */
+    public void set(int s, int d, ErrorEstimate e) {
+        ensureIntervals();
+        int k = s * cols + d;
+        lower[k] = e.lower;
+        upper[k] = e.upper;
+        samples[k] = e.samples;
+        set(s, d, e.error);
+    }
+
+    private synchronized void ensureIntervals() {
+        if (lower != null) return;
+        int[] sm = new int[data.length];
+        double[] lo = new double[data.length], hi = new double[data.length];
+        Arrays.fill(lo, Double.NaN);
+        Arrays.fill(hi, Double.NaN);
+        upper = hi;
+        samples = sm;
+        lower = lo;
+    }
+
+    public boolean hasIntervals() { return lower != null; }
+
+    public double lower(int s, int d) { return lowerAt(s * cols + d); }
+    public double upper(int s, int d) { return upperAt(s * cols + d); }
+
+    /** Rows scored for this cell (0 when it was not filled from an estimate). */
+    public int samples(int s, int d) { return samples == null ? 0 : samples[s * cols + d]; }
+
+    /** Rows scored over all cells (0 when no estimates were stored). */
+    public long totalSamples() {
+        long t = 0;
+        if (samples != null) for (int v : samples) t += v;
+        return t;
+    }
+
+    private double lowerAt(int k) {
+        return lower == null || Double.isNaN(lower[k]) ? data[k] : lower[k];
+    }
+
+    private double upperAt(int k) {
+        return upper == null || Double.isNaN(upper[k]) ? data[k] : upper[k];
+    }
+
+    public boolean isObserved(int s, int d) { return !Double.isNaN(data[s * cols + d]); }
+
+    /** Mark every cell unobserved. */
+    public void clear() {
+        Arrays.fill(data, Double.NaN);
+        rowSum = null;
+    }
+
+    /** Errors of source s on every destination (view). */
+    public View row(int s) { return new View(this, s * cols, 1, cols); }
+
+    /** Errors of every source on destination d (view). */
+    public View col(int d) { return new View(this, d, cols, rows); }
+
+    // ---- aggregates (observed cells only) ----
+
+    private void aggregate() {
+        if (rowSum != null) return;
+        double[] rs = new double[rows], cs = new double[cols];
+        int[] rc = new int[rows], cc = new int[cols];
+        for (int i = 0, k = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++, k++) {
+                double v = data[k];
+                if (Double.isNaN(v)) continue;
+                rs[i] += v;
+                rc[i]++;
+                cs[j] += v;
+                cc[j]++;
+            }
+        }
+        rowCount = rc;
+        colSum = cs;
+        colCount = cc;
+        rowSum = rs;
+    }
+
+    public double rowSum(int s) { aggregate(); return rowSum[s]; }
+    public double colSum(int d) { aggregate(); return colSum[d]; }
+    public int rowCount(int s) { aggregate(); return rowCount[s]; }
+    public int colCount(int d) { aggregate(); return colCount[d]; }
+
+    /** Mean of the observed cells of row s (0.0 if none). */
+    public double rowMean(int s) {
+        aggregate();
+        return rowCount[s] == 0 ? 0.0 : rowSum[s] / rowCount[s];
+    }
+
+    public double colMean(int d) {
+        aggregate();
+        return colCount[d] == 0 ? 0.0 : colSum[d] / colCount[d];
+    }
+
+    /** Average transfer error per source. */
+    public double[] rowMeans() {
+        double[] out = new double[rows];
+        for (int i = 0; i < rows; i++) out[i] = rowMean(i);
+        return out;
+    }
+
+    /** Average error suffered per destination. */
+    public double[] colMeans() {
+        double[] out = new double[cols];
+        for (int j = 0; j < cols; j++) out[j] = colMean(j);
+        return out;
+    }
+
+    /** Unobserved cells as {source, destination} pairs, row-major order. */
+    public List<int[]> missingCells() {
+        List<int[]> out = new ArrayList<>();
+        for (int k = 0; k < data.length; k++) if (Double.isNaN(data[k])) out.add(new int[]{k / cols, k % cols});
+        return out;
+    }
+
+    /** Bytes held by the cells (for cost reports). */
+    public long sizeInBytes() { return data.length * 8L; }
+
+    public double[][] toArrays() {
+        double[][] out = new double[rows][];
+        for (int i = 0; i < rows; i++) out[i] = Arrays.copyOfRange(data, i * cols, (i + 1) * cols);
+        return out;
+    }
+
+    /** Boxed copy for code that still takes List<List<Double>>. */
+    public List<List<Double>> toLists() {
+        List<List<Double>> out = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            List<Double> r = new ArrayList<>(cols);
+            for (int j = 0; j < cols; j++) r.add(data[i * cols + j]);
+            out.add(r);
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "ErrorMatrix{" + rows + "x" + cols + "}";
+    }
+
+    /** Strided read-only window onto a row or column of an ErrorMatrix. */
+    public static final class View {
+        private final ErrorMatrix m;
+        private final double[] data;
+        private final int offset;
+        private final int stride;
+        private final int size;
+
+        View(ErrorMatrix m, int offset, int stride, int size) {
+            this.m = m;
+            this.data = m.data;
+            this.offset = offset;
+            this.stride = stride;
+            this.size = size;
+        }
+
+        public int size() { return size; }
+
+        public double get(int i) { return data[offset + i * stride]; }
+
+        public double lower(int i) { return m.lowerAt(offset + i * stride); }
+
+        public double upper(int i) { return m.upperAt(offset + i * stride); }
+
+        public boolean isObserved(int i) { return !Double.isNaN(get(i)); }
+
+        /** Copy of all cells (NaN where unobserved). */
+        public double[] toArray() {
+            double[] out = new double[size];
+            for (int i = 0; i < size; i++) out[i] = get(i);
+            return out;
+        }
+
+        /** Copy of the observed cells only, in order. */
+        public double[] observed() {
+            double[] out = new double[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                double v = get(i);
+                if (!Double.isNaN(v)) out[n++] = v;
+            }
+            return n == size ? out : Arrays.copyOf(out, n);
+        }
+    }
+}
@@ -2,33 +2,301 @@ package tapd.model;
 
 import smile.classification.RandomForest;
 import smile.data.Tuple;
+import smile.data.type.StructType;
 import smile.data.vector.DoubleVector;
 import smile.data.DataFrame;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+import tapd.util.ParallelUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Evaluator for SMILE 2.6.0 RandomForest.
+ *
+ * Predictions go through predict(model, X): the "f0".."f{d-1}" schema is built once
+ * per feature count and cached, and one Tuple over a reused row buffer is refilled
+ * for every sample, so predicting a matrix allocates no per-row DataFrame,
+ * DoubleVectors or column names.
+ *
+ * With useCompiled (default) each model is flattened once into a CompiledForest
+ * (cached per model instance) and predicted from that node table instead; if a
+ * forest cannot be compiled the SMILE path is used for it.
+ *
+ * With a PredictionCache set, predict/computeError/computeAccuracy on a FeatureMatrix
+ * reuse the stored per-row predictions of (model, matrix version) instead of
+ * predicting again.
  */
 public class Evaluator {
 
-    // Build a one-row DataFrame to make a Tuple for prediction
-    private Tuple makeTuple(double[] x) {
-        int d = x.length;
-        DoubleVector[] cols = new DoubleVector[d];
-        for (int j = 0; j < d; j++) {
-            cols[j] = DoubleVector.of("f" + j, new double[]{x[j]});
+    private static final Map<Integer, StructType> SCHEMAS = new ConcurrentHashMap<>();
+
+    public boolean useCompiled = true;
+    public PredictionCache cache;   // null = always predict
+    private final Map<RandomForest, CompiledForest> compiled = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Set<RandomForest> notCompilable = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    // Schema with the same column names ModelTrainer trains on (built once per width)
+    static StructType schema(int d) {
+        return SCHEMAS.computeIfAbsent(d, k -> {
+            DoubleVector[] cols = new DoubleVector[k];
+            for (int j = 0; j < k; j++) cols[j] = DoubleVector.of("f" + j, new double[1]);
+            return DataFrame.of(cols).schema();
+        });
+    }
+
+    /** Compiled form of model (built once), or null when it cannot be compiled. */
+    public CompiledForest compiled(RandomForest model) {
+        CompiledForest cf = compiled.get(model);
+        if (cf != null || notCompilable.contains(model)) return cf;
+        try {
+            cf = CompiledForest.compile(model);
+            compiled.put(model, cf);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Using SMILE predict, forest not compiled: " + ex.getMessage());
+            notCompilable.add(model);
+        }
+        return cf;
+    }
+
+    /**
+     * Compare the compiled forest against SMILE's predict on X. Returns the number of
+     * disagreeing rows; on any disagreement the compiled form is dropped for that model.
+     * With a cache, verified predictions are kept for the accuracy pass that usually follows.
+     */
+    public int verifyCompiled(RandomForest model, FeatureMatrix X) {
+        CompiledForest cf = compiled(model);
+        if (cf == null) return 0;
+        int bad;
+        if (cache != null) {
+            PredictionCache.Entry e = cf.predictEntry(X);
+            int[] ref = predictSmile(model, X);
+            bad = 0;
+            for (int i = 0; i < ref.length; i++) if (e.pred(i) != ref[i]) bad++;
+            if (bad == 0) cache.put(model, X, e);
+        } else {
+            bad = cf.verify(model, X);
+        }
+        if (bad > 0) {
+            compiled.remove(model);
+            notCompilable.add(model);
+        }
+        return bad;
+    }
+
+    /** Predicted class for every row of X. */
+    public int[] predict(RandomForest model, FeatureMatrix X) {
+        if (cache != null) return predictions(model, X).predictions();
+        CompiledForest cf = useCompiled ? compiled(model) : null;
+        if (cf != null) return cf.predict(X);
+        return predictSmile(model, X);
+    }
+
+    /** Predictions and posteriors of model on X, from the cache when one is set and current. */
+    public PredictionCache.Entry predictions(RandomForest model, FeatureMatrix X) {
+        PredictionCache c = cache;
+        PredictionCache.Entry e = c != null ? c.get(model, X) : null;
+        if (e != null) return e;
+        CompiledForest cf = useCompiled ? compiled(model) : null;
+        if (cf != null) {
+            e = cf.predictEntry(X);
+        } else {
+            long version = X.version();
+            int[] pred = predictSmile(model, X);
+            int k = 2;
+            for (int p : pred) k = Math.max(k, p + 1);
+            e = new PredictionCache.Entry(pred.length, k, version);
+            for (int i = 0; i < pred.length; i++) e.setOneHot(i, pred[i]);
+        }
+        if (c != null) c.put(model, X, e);
+        return e;
+    }
+
+    /** Per-tree predictions of model on X, for errors of any forest prefix (TreeVotes). */
+    public TreeVotes treeVotes(RandomForest model, FeatureMatrix X) {
+        CompiledForest cf = useCompiled ? compiled(model) : null;
+        return cf != null ? TreeVotes.record(cf, X) : TreeVotes.recordSmile(model, X);
+    }
+
+    int[] predictSmile(RandomForest model, FeatureMatrix X) {
+        int[] out = new int[X.rows()];
+        predictSmile(model, X, 0, X.rows(), out);
+        return out;
+    }
+
+    // Rows [from, from + len) into out[0..len)
+    void predictSmile(RandomForest model, FeatureMatrix X, int from, int len, int[] out) {
+        double[] row = new double[X.cols()];
+        Tuple tuple = Tuple.of(row, schema(X.cols()));   // reads row[] on every access
+        for (int i = 0; i < len; i++) {
+            X.copyRow(from + i, row);
+            out[i] = model.predict(tuple);
+        }
+    }
+
+    /**
+     * Sequential estimate of the error of model on (X, y): rows are visited in a random
+     * order (policy.seed) in mini-batches until the policy's interval is tight enough.
+     */
+    public ErrorEstimate estimateError(RandomForest model, FeatureMatrix X, LabelVector y, EarlyStopPolicy policy) {
+        int[] order = shuffledOrder(X.rows(), new SplittableRandom(policy.seed));
+        return estimateErrorInOrder(model, X.view(order), y.view(order), policy);
+    }
+
+    /** As estimateError, for data whose rows are already in random order (e.g. a shuffled view). */
+    public ErrorEstimate estimateErrorInOrder(RandomForest model, FeatureMatrix X, LabelVector y, EarlyStopPolicy policy) {
+        int n = X.rows();
+        if (n == 0) return new ErrorEstimate(0.0, 0.0, 0.0, 0, 0);
+        CompiledForest cf = useCompiled ? compiled(model) : null;
+        int batch = Math.max(1, policy.batchSize);
+        int[] pred = new int[batch];
+        int wrong = 0, seen = 0, look = 0;
+        while (seen < n) {
+            int len = Math.min(batch, n - seen);
+            if (cf != null) cf.predict(X, seen, len, pred);
+            else predictSmile(model, X, seen, len, pred);
+            for (int r = 0; r < len; r++) if (pred[r] != y.get(seen + r)) wrong++;
+            seen += len;
+            if (seen < n && seen >= policy.minSamples) {
+                double[] ci = policy.interval(wrong, seen, ++look);
+                if ((ci[1] - ci[0]) / 2 <= policy.halfWidth) {
+                    return new ErrorEstimate((double) wrong / seen, ci[0], ci[1], seen, n);
+                }
+            }
+        }
+        double err = 1.0 - ((double) (n - wrong) / n);   // same arithmetic as computeError
+        return new ErrorEstimate(err, err, err, n, n);
+    }
+
+    /** Random permutation of 0..n-1 (Fisher-Yates). */
+    public static int[] shuffledOrder(int n, SplittableRandom rnd) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        return order;
+    }
+
+    /** Predicted class for every row of a row-major matrix. */
+    public int[] predict(RandomForest model, double[][] X) {
+        CompiledForest cf = useCompiled ? compiled(model) : null;
+        if (cf != null) return cf.predict(X);
+        int n = X.length;
+        int[] out = new int[n];
+        if (n == 0) return out;
+        int d = X[0].length;
+        double[] row = new double[d];
+        Tuple tuple = Tuple.of(row, schema(d));
+        for (int i = 0; i < n; i++) {
+            int len = Math.min(d, X[i].length);
+            System.arraycopy(X[i], 0, row, 0, len);
+            if (len < d) Arrays.fill(row, len, d, 0.0);
+            out[i] = model.predict(tuple);
+        }
+        return out;
+    }
+
+    public double computeError(RandomForest model, FeatureMatrix X, LabelVector y) {
+        int n = X.rows();
+        if (n == 0) return 0.0;
+        if (cache != null) return predictions(model, X).error(y);
+        int[] pred = predict(model, X);
+        int correct = 0;
+        for (int i = 0; i < n; i++) if (pred[i] == y.get(i)) correct++;
+        return 1.0 - ((double) correct / n);
+    }
+
+    /** Error of a forest received in wire format (ForestCodec); no PredictionCache, it is keyed by RandomForest. */
+    public double computeError(CompiledForest cf, FeatureMatrix X, LabelVector y) {
+        int n = X.rows();
+        if (n == 0) return 0.0;
+        int[] pred = cf.predict(X);
+        int correct = 0;
+        for (int i = 0; i < n; i++) if (pred[i] == y.get(i)) correct++;
+        return 1.0 - ((double) correct / n);
+    }
+
+    /**
+     * Errors of several forests on the same data in one shared pass: every block of rows is
+     * gathered once and scored by all models before the next block. Row ranges run in parallel
+     * on parallelism threads. out[m] is NaN for a null model or one needing more features than X has.
+     */
+    public double[] computeErrors(List<CompiledForest> models, FeatureMatrix X, LabelVector y, int parallelism) {
+        int M = models.size(), n = X.rows(), d = X.cols();
+        double[] out = new double[M];
+        CompiledForest[] todo = new CompiledForest[M];
+        int maxClasses = 2;
+        for (int m = 0; m < M; m++) {
+            CompiledForest cf = models.get(m);
+            if (cf == null || cf.numFeatures() > d) { out[m] = Double.NaN; continue; }
+            todo[m] = cf;
+            maxClasses = Math.max(maxClasses, cf.numClasses());
+        }
+        if (n == 0) return out;
+
+        int block = CompiledForest.BLOCK;
+        int blocks = (n + block - 1) / block;
+        int chunks = Math.max(1, Math.min(blocks, Math.max(1, parallelism) * 4));
+        long[] correct = new long[M];
+        int k = maxClasses;
+        Runnable[] work = new Runnable[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) blocks * c / chunks) * block;
+            int to = (int) Math.min(n, (long) blocks * (c + 1) / chunks * block);
+            work[c] = () -> {
+                long[] mine = new long[M];
+                double[] rows = new double[block * d];
+                double[] col = new double[block];
+                int[] votes = new int[block * k];
+                int[] pred = new int[block];
+                for (int r0 = from; r0 < to; r0 += block) {
+                    int len = Math.min(block, to - r0);
+                    CompiledForest.gatherBlock(X, r0, len, rows, col);
+                    for (int m = 0; m < M; m++) {
+                        if (todo[m] == null) continue;
+                        todo[m].predictBlock(rows, d, len, votes, pred, 0);
+                        for (int r = 0; r < len; r++) if (pred[r] == y.get(r0 + r)) mine[m]++;
+                    }
+                }
+                synchronized (correct) {
+                    for (int m = 0; m < M; m++) correct[m] += mine[m];
+                }
+            };
+        }
+        if (parallelism <= 1 || chunks == 1) {
+            for (Runnable w : work) w.run();
+        } else {
+            try (ForkJoinPool pool = ParallelUtils.pool(parallelism)) {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (Runnable w : work) tasks.add(pool.submit(w));
+                ParallelUtils.joinAll(tasks);
+            }
         }
-        DataFrame df = DataFrame.of(cols);
-        return df.get(0); // single row
+        for (int m = 0; m < M; m++) if (todo[m] != null) out[m] = 1.0 - ((double) correct[m] / n);
+        return out;
+    }
+
+    public double computeAccuracy(RandomForest model, FeatureMatrix X, LabelVector y) {
+        return 1.0 - computeError(model, X, y);
     }
 
     public double computeError(RandomForest model, double[][] X, int[] y) {
         if (X.length == 0) return 0.0;
+        int[] pred = predict(model, X);
         int correct = 0;
-        for (int i = 0; i < X.length; i++) {
-            Tuple row = makeTuple(X[i]);
-            int pred = model.predict(row);
-            if (pred == y[i]) correct++;
-        }
+        for (int i = 0; i < X.length; i++) if (pred[i] == y[i]) correct++;
         return 1.0 - ((double) correct / X.length);
     }
 
@@ -0,0 +1,201 @@
+package tapd.model;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary wire format of a CompiledForest, replacing Java serialization of the
+ * SMILE RandomForest + Base64 + JSON. Only the flattened node table is sent: a leaf
+ * costs 2-3 bytes, a split about 11-14 bytes (threshold as float when that is exact).
+ *
+ * Layout (version 1):
+ *   "TAPF" magic, version byte, flags byte (bit 0: body is Deflate-compressed)
+ *   body: varint numClasses, numTrees, numNodes; varint node count of each tree;
+ *         then every node in pre-order:
+ *           op byte (LEAF / ORDINAL / NOMINAL, | FLOAT when the threshold is a float)
+ *           leaf:  varint class
+ *           split: varint feature, float or double threshold, varint (falseChild - node)
+ *
+ * Both directions stream (no intermediate byte[] of the whole model), so a service can
+ * read straight from the request body and write straight to the response.
+ *
+ * Usage:
+ *   ForestCodec.write(cf, out, true);
+ *   CompiledForest back = ForestCodec.read(in);
+ *   CompiledForest body = ForestCodec.readWhole(req.getInputStream());   // nothing may follow
+ *   byte[] wire = ForestCodec.encode(cf, true);
+ */
+public final class ForestCodec {
+    public static final int VERSION = 1;
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final byte[] MAGIC = {'T', 'A', 'P', 'F'};
+    private static final int DEFLATED = 1;
+    private static final int FLOAT = 0x80;
+
+    private ForestCodec() {}
+
+    /** True if the stream starts with the magic (needs mark support, the position is restored). */
+    public static boolean isEncoded(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) if (in.read() != (b & 0xFF)) return false;
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    public static byte[] encode(CompiledForest cf, boolean deflate) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        write(cf, bos, deflate);
+        return bos.toByteArray();
+    }
+
+    public static CompiledForest decode(byte[] wire) throws IOException {
+        return readWhole(new ByteArrayInputStream(wire));
+    }
+
+    /** Encoded size without keeping the bytes. */
+    public static long encodedSize(CompiledForest cf, boolean deflate) throws IOException {
+        long[] n = {0};
+        write(cf, new OutputStream() {
+            @Override public void write(int b) { n[0]++; }
+            @Override public void write(byte[] b, int off, int len) { n[0] += len; }
+        }, deflate);
+        return n[0];
+    }
+
+    /** Write cf to out (out is flushed, not closed). */
+    public static void write(CompiledForest cf, OutputStream out, boolean deflate) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(deflate ? DEFLATED : 0);
+        DeflaterOutputStream z = deflate ? new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), 8192) : null;
+        DataOutputStream d = new DataOutputStream(new BufferedOutputStream(z != null ? z : out, 8192));
+        int trees = cf.roots.length, nodes = cf.op.length;
+        writeVarInt(d, cf.numClasses);
+        writeVarInt(d, trees);
+        writeVarInt(d, nodes);
+        for (int t = 0; t < trees; t++) writeVarInt(d, (t + 1 < trees ? cf.roots[t + 1] : nodes) - cf.roots[t]);
+        for (int i = 0; i < nodes; i++) {
+            if (cf.op[i] == CompiledForest.LEAF) {
+                d.writeByte(CompiledForest.LEAF);
+                writeVarInt(d, cf.leafClass[i]);
+                continue;
+            }
+            double t = cf.threshold[i];
+            boolean asFloat = (double) (float) t == t;
+            d.writeByte(cf.op[i] | (asFloat ? FLOAT : 0));
+            writeVarInt(d, cf.feature[i]);
+            if (asFloat) d.writeFloat((float) t);
+            else d.writeDouble(t);
+            writeVarInt(d, cf.falseChild[i] - i);
+        }
+        d.flush();
+        if (z != null) z.finish();
+        out.flush();
+    }
+
+    /**
+     * Read one forest written by write(...). Throws IOException on a malformed stream, including
+     * one that would only fail while predicting (class or feature out of range, a child outside
+     * its tree), so corrupt or hostile bytes never reach predictBlock.
+     */
+    public static CompiledForest read(InputStream in) throws IOException {
+        return read(in, false);
+    }
+
+    /**
+     * As read(in), but the stream must end right after the forest: trailing bytes are an
+     * IOException. read(in) buffers ahead, so only this variant can tell.
+     */
+    public static CompiledForest readWhole(InputStream in) throws IOException {
+        return read(in, true);
+    }
+
+    private static CompiledForest read(InputStream in, boolean whole) throws IOException {
+        for (byte b : MAGIC) if (in.read() != (b & 0xFF)) throw new IOException("Not a TAPF forest stream");
+        int version = in.read();
+        if (version != VERSION) throw new IOException("Unsupported forest format version " + version);
+        int flags = in.read();
+        if (flags < 0) throw new EOFException();
+        Inflater inflater = (flags & DEFLATED) != 0 ? new Inflater() : null;
+        try {
+            InputStream body = inflater != null ? new InflaterInputStream(in, inflater) : in;
+            DataInputStream d = new DataInputStream(new BufferedInputStream(body, 8192));
+            CompiledForest cf = readBody(d);
+            // the Deflate stream must be complete, with nothing after it in the inflater's buffer or in 'in'
+            if (whole && (d.read() >= 0 || inflater != null && (!inflater.finished() || inflater.getRemaining() > 0 || in.read() >= 0))) {
+                throw new IOException("Trailing bytes after the forest");
+            }
+            return cf;
+        } finally {
+            if (inflater != null) inflater.end();
+        }
+    }
+
+    private static CompiledForest readBody(DataInputStream d) throws IOException {
+        int numClasses = readVarInt(d), trees = readVarInt(d), nodes = readVarInt(d);
+        if (numClasses <= 0) throw new IOException("Bad class count " + numClasses);
+        if (trees <= 0 || nodes < trees) throw new IOException("Bad forest size: " + trees + " trees, " + nodes + " nodes");
+        int[] roots = new int[trees];
+        long next = 0;
+        for (int t = 0; t < trees; t++) {
+            roots[t] = (int) next;
+            int size = readVarInt(d);
+            if (size <= 0) throw new IOException("Empty or oversized tree " + t);
+            next += size;
+            if (next > nodes) break;
+        }
+        if (next != nodes) throw new IOException("Tree sizes add up to " + next + ", expected " + nodes);
+        byte[] op = new byte[nodes];
+        int[] feature = new int[nodes], falseChild = new int[nodes], leafClass = new int[nodes];
+        double[] threshold = new double[nodes];
+        int tree = 0;
+        for (int i = 0; i < nodes; i++) {
+            while (tree + 1 < trees && roots[tree + 1] <= i) tree++;
+            int treeEnd = tree + 1 < trees ? roots[tree + 1] : nodes;
+            int code = d.readUnsignedByte();
+            op[i] = (byte) (code & ~FLOAT);
+            if (op[i] == CompiledForest.LEAF) {
+                feature[i] = -1;
+                leafClass[i] = readVarInt(d);
+                if (leafClass[i] < 0 || leafClass[i] >= numClasses) throw new IOException("Bad leaf class " + leafClass[i] + " at node " + i);
+                continue;
+            }
+            if (op[i] != CompiledForest.ORDINAL && op[i] != CompiledForest.NOMINAL) throw new IOException("Bad node op " + code);
+            leafClass[i] = -1;
+            feature[i] = readVarInt(d);
+            if (feature[i] < 0 || feature[i] == Integer.MAX_VALUE) throw new IOException("Bad feature " + feature[i] + " at node " + i);
+            threshold[i] = (code & FLOAT) != 0 ? d.readFloat() : d.readDouble();
+            long child = (long) i + readVarInt(d);
+            // both children (i + 1 and falseChild) must lie inside the node's own tree
+            if (child <= i + 1 || child >= treeEnd) throw new IOException("Bad false child at node " + i);
+            falseChild[i] = (int) child;
+        }
+        return new CompiledForest(roots, op, feature, threshold, falseChild, leafClass, numClasses);
+    }
+
+    // Unsigned LEB128
+    static void writeVarInt(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Varint too long");
+    }
+}
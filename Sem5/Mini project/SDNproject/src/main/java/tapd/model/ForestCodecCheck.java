@@ -0,0 +1,106 @@
+package tapd.model;
+
+import smile.classification.RandomForest;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Equivalence check for the ForestCodec wire format: a SMILE forest is compiled, encoded,
+ * decoded and predicted again, and every step must give exactly SMILE's own predictions
+ * (Evaluator's SMILE path). Run with and without Deflate, from bytes and from a stream.
+ *
+ * Also checked: re-encoding the decoded forest gives the same bytes (so the content hash
+ * is stable), encodedSize matches, Evaluator.computeError / computeErrors on the decoded
+ * forest equal the SMILE error, and a truncated stream is rejected with an IOException.
+ * The run aborts with the first mismatch.
+ *
+ * Data is synthetic (Gaussian features, classes from a noisy linear score) so the trees
+ * have realistic depth.
+ *
+ * Usage: java tapd.model.ForestCodecCheck [rows=5000] [cols=16] [trees=50] [classes=3]
+ */
+public class ForestCodecCheck {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int trees = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int classes = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        Random rnd = new Random(42);
+        double[][] X = new double[rows][cols];
+        int[] y = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            double s = 0.0;
+            for (int j = 0; j < cols; j++) {
+                X[i][j] = j % 5 == 0 ? Math.floor(rnd.nextDouble() * 4) : rnd.nextGaussian();
+                if (j % 3 == 0) s += X[i][j];
+            }
+            s += 0.5 * rnd.nextGaussian();
+            y[i] = Math.min(classes - 1, Math.max(0, (int) Math.floor(s + classes / 2.0)));
+        }
+        FeatureMatrix M = FeatureMatrix.of(X);
+        LabelVector Y = LabelVector.of(y);
+        System.out.println("=== ForestCodec check: rows=" + rows + " cols=" + cols + " trees=" + trees + " classes=" + classes + " ===");
+
+        RandomForest model = new ModelTrainer().trainRandomForest(M, Y, trees, 42L);
+        Evaluator smile = new Evaluator();
+        smile.useCompiled = false;
+        int[] ref = smile.predictSmile(model, M);
+        double refError = smile.computeError(model, M, Y);
+
+        CompiledForest cf = CompiledForest.compile(model);
+        same("compiled", ref, cf.predict(M));
+
+        for (boolean deflate : new boolean[]{false, true}) {
+            String tag = deflate ? "deflate" : "plain";
+            byte[] wire = ForestCodec.encode(cf, deflate);
+            if (ForestCodec.encodedSize(cf, deflate) != wire.length) throw new IllegalStateException(tag + ": encodedSize differs");
+            if (!ForestCodec.isEncoded(new ByteArrayInputStream(wire))) throw new IllegalStateException(tag + ": magic not found");
+
+            CompiledForest back = ForestCodec.decode(wire);
+            same(tag + " decode", ref, back.predict(M));
+            same(tag + " stream", ref, ForestCodec.read(new ByteArrayInputStream(wire)).predict(M));
+            if (!Arrays.equals(wire, ForestCodec.encode(back, deflate))) throw new IllegalStateException(tag + ": re-encoding changed the bytes");
+
+            Evaluator ev = new Evaluator();
+            double err = ev.computeError(back, M, Y);
+            double[] batch = ev.computeErrors(List.of(back, cf), M, Y, 4);
+            if (err != refError || batch[0] != refError || batch[1] != refError) {
+                throw new IllegalStateException(tag + ": error " + err + " / batch " + Arrays.toString(batch) + " != SMILE " + refError);
+            }
+
+            try {
+                ForestCodec.decode(Arrays.copyOf(wire, wire.length / 2));
+                throw new IllegalStateException(tag + ": truncated stream was accepted");
+            } catch (IOException expected) {
+                // rejected at decode time
+            }
+            System.out.printf("%-7s %9d bytes, predictions and error identical to SMILE (%d rows)%n", tag, wire.length, rows);
+        }
+        System.out.printf("Java-serialized RandomForest: %d bytes, %s%n", javaSerializedSize(model), cf);
+        System.out.println("OK");
+    }
+
+    private static void same(String what, int[] want, int[] got) {
+        for (int i = 0; i < want.length; i++) {
+            if (want[i] != got[i]) throw new IllegalStateException(what + ": prediction mismatch at row " + i + " (" + got[i] + " != " + want[i] + ")");
+        }
+    }
+
+    private static long javaSerializedSize(RandomForest model) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(model);
+        }
+        return bos.size();
+    }
+}
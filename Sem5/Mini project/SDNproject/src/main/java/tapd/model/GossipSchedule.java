@@ -0,0 +1,69 @@
+package tapd.model;
+
+import java.util.SplittableRandom;
+
+/**
+ * Sparse transfer topology: in every round each source model is evaluated by k peers
+ * instead of all N - 1 other controllers.
+ *
+ * Rounds are grouped in epochs of ceil((N - 1) / k) rounds. Each epoch draws a random
+ * ring order of the controllers; in round r of the epoch, the source at ring position p
+ * goes to the peers at positions p + 1 + (r * k + j) mod (N - 1), j = 0..k-1. Within an
+ * epoch every (source, destination) pair therefore comes up at least once (exactly once
+ * when k divides N - 1), and every controller hosts exactly k foreign models per round.
+ *
+ * Usage:
+ *   GossipSchedule g = new GossipSchedule(N, 3, seed);
+ *   int[][] peers = g.peers(round);   // peers[s] = destinations evaluating model s
+ */
+public class GossipSchedule {
+    public final int N;
+    public final int k;
+    public final long seed;
+
+    public GossipSchedule(int N, int k, long seed) {
+        if (N < 1) throw new IllegalArgumentException("N must be positive: " + N);
+        this.N = N;
+        this.k = Math.max(0, Math.min(k, N - 1));
+        this.seed = seed;
+    }
+
+    /** Rounds per epoch (after that many rounds every pair has been evaluated once). */
+    public int roundsPerEpoch() {
+        return k == 0 ? 1 : (N - 1 + k - 1) / k;
+    }
+
+    /** Destinations that evaluate model s in the given round (k entries, never s). */
+    public int[][] peers(int round) {
+        int epoch = round / roundsPerEpoch();
+        int r = round % roundsPerEpoch();
+        int[] ring = ring(epoch);
+        int[] pos = new int[N];
+        for (int p = 0; p < N; p++) pos[ring[p]] = p;
+        int[][] out = new int[N][];
+        for (int s = 0; s < N; s++) {
+            int[] mine = new int[k];
+            for (int j = 0; j < k; j++) {
+                int step = 1 + (r * k + j) % (N - 1);
+                mine[j] = ring[(pos[s] + step) % N];
+            }
+            out[s] = mine;
+        }
+        return out;
+    }
+
+    /** Number of (source, destination) evaluations in one round. */
+    public int evaluationsPerRound() {
+        return N * k;
+    }
+
+    // Random ring order of the controllers for one epoch
+    private int[] ring(int epoch) {
+        return Evaluator.shuffledOrder(N, new SplittableRandom(seed + 0x9E3779B97F4A7C15L * epoch));
+    }
+
+    @Override
+    public String toString() {
+        return "GossipSchedule{N=" + N + ", k=" + k + ", roundsPerEpoch=" + roundsPerEpoch() + "}";
+    }
+}
@@ -1,34 +1,51 @@
 package tapd.model;
 
+import smile.base.cart.SplitRule;
 import smile.classification.RandomForest;
 import smile.data.DataFrame;
 import smile.data.formula.Formula;
 import smile.data.vector.DoubleVector;
 import smile.data.vector.IntVector;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+import tapd.util.ParallelUtils;
 
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.LongStream;
 
 /**
  * ModelTrainer for SMILE 2.6.0
- * Builds DataFrame from double[][] X and int[] y
+ * Builds DataFrame from a column-major FeatureMatrix (each SMILE column is one
+ * contiguous copy, no row-to-column transpose) and a LabelVector.
+ *
+ * Every tree gets an explicit seed drawn from a SplittableRandom stream, so a
+ * forest is identical whatever threads build it. trainAll(...) trains several
+ * forests at once on one ForkJoinPool of coreBudget threads; SMILE's own
+ * per-tree parallel stream runs inside that pool too, so forests x trees never
+ * use more than coreBudget threads.
  */
 public class ModelTrainer {
+    // SMILE 2.6 defaults of RandomForest.fit(formula, data, properties)
+    private static final int MAX_DEPTH = 20;
+    private static final int NODE_SIZE = 5;
+    private static final double SUBSAMPLE = 1.0;
 
-    // Convert arrays to SMILE DataFrame
-    private DataFrame toDataFrame(double[][] X, int[] y) {
-        int n = X.length;
-        int d = X[0].length;
+    // Convert columnar data to SMILE DataFrame
+    private DataFrame toDataFrame(FeatureMatrix X, LabelVector y) {
+        int d = X.cols();
 
-        // create feature vectors
+        // create feature vectors (one contiguous column copy each)
         DoubleVector[] features = new DoubleVector[d];
         for (int j = 0; j < d; j++) {
-            double[] col = new double[n];
-            for (int i = 0; i < n; i++) col[i] = X[i][j];
-            features[j] = DoubleVector.of("f" + j, col);
+            features[j] = DoubleVector.of("f" + j, X.column(j));
         }
 
         // label column
-        IntVector labelCol = IntVector.of("label", y);
+        IntVector labelCol = IntVector.of("label", y.toArray());
 
         // combine into DataFrame
         DataFrame df = DataFrame.of(features).merge(labelCol);
@@ -36,13 +53,56 @@ public class ModelTrainer {
     }
 
     public RandomForest trainRandomForest(double[][] X, int[] y, int numTrees, long seed) {
+        return trainRandomForest(FeatureMatrix.of(X), LabelVector.of(y), numTrees, seed);
+    }
+
+    public RandomForest trainRandomForest(FeatureMatrix X, LabelVector y, int numTrees, long seed) {
+        return trainRandomForest(X, y, numTrees, new SplittableRandom(seed));
+    }
+
+    // Tree seeds are the next numTrees longs of the given stream
+    public RandomForest trainRandomForest(FeatureMatrix X, LabelVector y, int numTrees, SplittableRandom seeds) {
         DataFrame df = toDataFrame(X, y);
         Formula formula = Formula.lhs("label");
+        long[] treeSeeds = seeds.longs(numTrees).toArray();
+        int mtry = Math.max(1, (int) Math.floor(Math.sqrt(X.cols())));
+        int maxNodes = Math.max(2, X.rows() / 5);
 
-        Properties params = new Properties();
-        params.setProperty("smile.random.forest.trees", String.valueOf(numTrees));
-        params.setProperty("smile.random.forest.seed", String.valueOf(seed));
+        return RandomForest.fit(formula, df, numTrees, mtry, SplitRule.GINI, MAX_DEPTH, maxNodes,
+                NODE_SIZE, SUBSAMPLE, null, LongStream.of(treeSeeds));
+    }
 
-        return RandomForest.fit(formula, df, params);
+    /**
+     * Seed stream of each of forests models: the i-th split() of SplittableRandom(seed).
+     * Sequential and parallel training both use these, so forest i is the same either way.
+     */
+    public static List<SplittableRandom> forestSeeds(long seed, int forests) {
+        SplittableRandom master = new SplittableRandom(seed);
+        List<SplittableRandom> streams = new ArrayList<>();
+        for (int i = 0; i < forests; i++) streams.add(master.split());
+        return streams;
+    }
+
+    /**
+     * Train one forest per (Xs[i], ys[i]) on at most coreBudget threads.
+     * Forest i uses forestSeeds(seed, n).get(i) (split in order before any work starts),
+     * so the returned models do not depend on coreBudget or scheduling.
+     */
+    public List<RandomForest> trainAll(List<FeatureMatrix> Xs, List<LabelVector> ys, int numTrees,
+                                       long seed, int coreBudget) {
+        List<SplittableRandom> streams = forestSeeds(seed, Xs.size());
+
+        try (ForkJoinPool pool = ParallelUtils.pool(coreBudget)) {
+            List<ForkJoinTask<RandomForest>> tasks = new ArrayList<>();
+            for (int i = 0; i < Xs.size(); i++) {
+                FeatureMatrix X = Xs.get(i);
+                LabelVector y = ys.get(i);
+                SplittableRandom stream = streams.get(i);
+                tasks.add(pool.submit(() -> trainRandomForest(X, y, numTrees, stream)));
+            }
+            List<RandomForest> models = new ArrayList<>();
+            for (ForkJoinTask<RandomForest> t : tasks) models.add(t.join());
+            return models;
+        }
     }
 }
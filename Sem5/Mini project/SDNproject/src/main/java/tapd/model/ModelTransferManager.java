@@ -1,33 +1,278 @@
 package tapd.model;
 
 import smile.classification.RandomForest;
+import tapd.data.CoresetBuilder;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+import tapd.util.ParallelUtils;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
- * Evaluate each source RandomForest on each destination dataset.
+ * Evaluate each source RandomForest on each destination dataset into an ErrorMatrix
+ * (rows = sources, columns = destinations).
+ * Goes through Evaluator, so each source model is compiled once and reused for all N destinations.
+ *
+ * performTransfersParallel(...) fills the same matrix on a ForkJoinPool. Work is split into
+ * tiles of (one destination, up to SOURCE_TILE sources); a tile walks its destination in
+ * row blocks, gathers each block once and lets every source in the tile score it while the
+ * block is still in cache. Tiles are independent, so idle workers steal them.
+ *
+ * performTransferSweep(...) records every tree's vote once per cell (TreeVotes) and returns
+ * one matrix per forest size k, as if each source had been trained with only k trees.
+ *
+ * performTransfersSparse(...) evaluates only the cells a GossipSchedule picks for one round
+ * (plus each controller's own cell), leaving the rest unobserved (NaN).
+ *
+ * When the Evaluator has a PredictionCache, cells already in it are read from there and the
+ * tiles store the predictions and vote shares they compute, so later stages reuse them.
  */
 public class ModelTransferManager {
 
+    /** Sources scored per gathered destination block. */
+    static final int SOURCE_TILE = 4;
+
     private final Evaluator eval;
 
     public ModelTransferManager(Evaluator eval) {
         this.eval = eval;
     }
 
-    public List<List<Double>> performTransfers(List<RandomForest> models,
-                                               List<double[][]> localsX,
-                                               List<int[]> localsY) {
+    public ErrorMatrix performTransfers(List<RandomForest> models,
+                                        List<FeatureMatrix> localsX,
+                                        List<LabelVector> localsY) {
         int N = models.size();
-        List<List<Double>> matrix = new ArrayList<>();
+        ErrorMatrix matrix = new ErrorMatrix(N, localsX.size());
         for (int s = 0; s < N; s++) {
-            List<Double> row = new ArrayList<>();
             RandomForest m = models.get(s);
-            for (int d = 0; d < N; d++) {
-                double err = eval.computeError(m, localsX.get(d), localsY.get(d));
-                row.add(err);
+            for (int d = 0; d < localsX.size(); d++) {
+                matrix.set(s, d, eval.computeError(m, localsX.get(d), localsY.get(d)));
             }
-            matrix.add(row);
         }
         return matrix;
     }
+
+    /** Parallel version on a dedicated pool of the given size; same cells as performTransfers. */
+    public ErrorMatrix performTransfersParallel(List<RandomForest> models,
+                                                List<FeatureMatrix> localsX,
+                                                List<LabelVector> localsY,
+                                                int parallelism) {
+        try (ForkJoinPool pool = ParallelUtils.pool(parallelism)) {
+            return performTransfersParallel(models, localsX, localsY, pool);
+        }
+    }
+
+    public ErrorMatrix performTransfersParallel(List<RandomForest> models,
+                                                List<FeatureMatrix> localsX,
+                                                List<LabelVector> localsY,
+                                                ForkJoinPool pool) {
+        int N = models.size();
+        ErrorMatrix errors = new ErrorMatrix(N, localsX.size());
+
+        // compile every source once, in parallel (null = SMILE fallback)
+        List<ForkJoinTask<CompiledForest>> compiles = new ArrayList<>();
+        for (RandomForest m : models) compiles.add(pool.submit(() -> eval.useCompiled ? eval.compiled(m) : null));
+        CompiledForest[] compiled = new CompiledForest[N];
+        for (int s = 0; s < N; s++) compiled[s] = compiles.get(s).join();
+
+        List<ForkJoinTask<?>> tiles = new ArrayList<>();
+        for (int d = 0; d < localsX.size(); d++) {
+            for (int s0 = 0; s0 < N; s0 += SOURCE_TILE) {
+                int dst = d, from = s0, to = Math.min(N, s0 + SOURCE_TILE);
+                tiles.add(pool.submit(() -> scoreTile(models, compiled, from, to,
+                        localsX.get(dst), localsY.get(dst), errors, dst)));
+            }
+        }
+        ParallelUtils.joinAll(tiles);
+        return errors;
+    }
+
+    /**
+     * Coreset variant: every destination is replaced by a small stratified, feature-diverse
+     * subset (CoresetBuilder, a zero-copy view) before the parallel tiled evaluation.
+     * Destination d's coreset uses seed + d, the same per-controller seed MainRunnerSDN uses.
+     */
+    public ErrorMatrix performTransfersOnCoresets(List<RandomForest> models,
+                                                  List<FeatureMatrix> localsX,
+                                                  List<LabelVector> localsY,
+                                                  CoresetBuilder coresets,
+                                                  long seed,
+                                                  int parallelism) {
+        List<FeatureMatrix> coreX = new ArrayList<>();
+        List<LabelVector> coreY = new ArrayList<>();
+        for (int d = 0; d < localsX.size(); d++) {
+            Map<String,Object> core = coresets.build(localsX.get(d), localsY.get(d), seed + d);
+            coreX.add((FeatureMatrix) core.get("X"));
+            coreY.add((LabelVector) core.get("y"));
+        }
+        return performTransfersParallel(models, coreX, coreY, parallelism);
+    }
+
+    /**
+     * Early-stopping variant: every cell is an Evaluator.estimateErrorInOrder over a shuffled
+     * view of the destination, and the matrix keeps each cell's interval and sample count.
+     * Destination d is shuffled once (the d-th split of SplittableRandom(policy.seed)) and all
+     * sources see the same row order. Cells run as independent tasks on parallelism threads.
+     */
+    public ErrorMatrix performTransfersEarlyStop(List<RandomForest> models,
+                                                 List<FeatureMatrix> localsX,
+                                                 List<LabelVector> localsY,
+                                                 EarlyStopPolicy policy,
+                                                 int parallelism) {
+        int N = models.size();
+        int D = localsX.size();
+        ErrorMatrix errors = new ErrorMatrix(N, D);
+        SplittableRandom master = new SplittableRandom(policy.seed);
+        FeatureMatrix[] shuffledX = new FeatureMatrix[D];
+        LabelVector[] shuffledY = new LabelVector[D];
+        for (int d = 0; d < D; d++) {
+            int[] order = Evaluator.shuffledOrder(localsX.get(d).rows(), master.split());
+            shuffledX[d] = localsX.get(d).view(order);
+            shuffledY[d] = localsY.get(d).view(order);
+        }
+
+        try (ForkJoinPool pool = ParallelUtils.pool(parallelism)) {
+            List<ForkJoinTask<?>> compiles = new ArrayList<>();
+            for (RandomForest m : models) compiles.add(pool.submit(() -> { if (eval.useCompiled) eval.compiled(m); }));
+            ParallelUtils.joinAll(compiles);
+
+            List<ForkJoinTask<?>> cells = new ArrayList<>();
+            for (int s = 0; s < N; s++) {
+                for (int d = 0; d < D; d++) {
+                    int src = s, dst = d;
+                    cells.add(pool.submit(() -> errors.set(src, dst,
+                            eval.estimateErrorInOrder(models.get(src), shuffledX[dst], shuffledY[dst], policy))));
+                }
+            }
+            ParallelUtils.joinAll(cells);
+        }
+        return errors;
+    }
+
+    /**
+     * One gossip round: cells (s, d) for d in schedule.peers(round)[s], and (s, s) if not yet
+     * observed, are evaluated into "into" (a new all-NaN matrix when null); other cells are
+     * left as they are, so successive rounds accumulate. Returns the matrix.
+     */
+    public ErrorMatrix performTransfersSparse(List<RandomForest> models,
+                                              List<FeatureMatrix> localsX,
+                                              List<LabelVector> localsY,
+                                              GossipSchedule schedule,
+                                              int round,
+                                              ErrorMatrix into,
+                                              int parallelism) {
+        int N = models.size();
+        if (schedule.N != N || localsX.size() != N) throw new IllegalArgumentException("Schedule is for " + schedule.N + " controllers, got " + N);
+        ErrorMatrix out = into != null ? into : ErrorMatrix.unobserved(N, N);
+        int[][] peers = schedule.peers(round);
+        try (ForkJoinPool pool = ParallelUtils.pool(parallelism)) {
+            List<ForkJoinTask<?>> cells = new ArrayList<>();
+            for (int s = 0; s < N; s++) {
+                int src = s;
+                if (!out.isObserved(s, s)) {
+                    cells.add(pool.submit(() -> out.set(src, src, eval.computeError(models.get(src), localsX.get(src), localsY.get(src)))));
+                }
+                for (int d : peers[s]) {
+                    cells.add(pool.submit(() -> out.set(src, d, eval.computeError(models.get(src), localsX.get(d), localsY.get(d)))));
+                }
+            }
+            ParallelUtils.joinAll(cells);
+        }
+        return out;
+    }
+
+    /**
+     * Errors of the first k trees of every source, for each k in ks (LinkedHashMap in ks order).
+     * Cells where a source has fewer than k trees stay unobserved (NaN).
+     */
+    public Map<Integer, ErrorMatrix> performTransferSweep(List<RandomForest> models,
+                                                          List<FeatureMatrix> localsX,
+                                                          List<LabelVector> localsY,
+                                                          int[] ks,
+                                                          int parallelism) {
+        int N = models.size();
+        int D = localsX.size();
+        Map<Integer, ErrorMatrix> out = new LinkedHashMap<>();
+        for (int k : ks) out.put(k, ErrorMatrix.unobserved(N, D));
+        try (ForkJoinPool pool = ParallelUtils.pool(parallelism)) {
+            List<ForkJoinTask<?>> cells = new ArrayList<>();
+            for (int s = 0; s < N; s++) {
+                for (int d = 0; d < D; d++) {
+                    int src = s, dst = d;
+                    cells.add(pool.submit(() -> {
+                        TreeVotes v = eval.treeVotes(models.get(src), localsX.get(dst));
+                        double[] curve = v.errorCurve(localsY.get(dst));
+                        for (Map.Entry<Integer, ErrorMatrix> e : out.entrySet()) {
+                            int k = e.getKey();
+                            if (k >= 1 && k <= curve.length) e.getValue().set(src, dst, curve[k - 1]);
+                        }
+                    }));
+                }
+            }
+            ParallelUtils.joinAll(cells);
+        }
+        return out;
+    }
+
+    // Sources [from, to) on one destination; each writes only its own (s, dst) cell
+    private void scoreTile(List<RandomForest> models, CompiledForest[] compiled, int from, int to,
+                           FeatureMatrix X, LabelVector y, ErrorMatrix errors, int dst) {
+        int n = X.rows();
+        long version = X.version();
+        PredictionCache cache = eval.cache;
+        int[] correct = new int[to - from];
+        CompiledForest[] todo = new CompiledForest[to - from];   // compiled sources still to score
+        PredictionCache.Entry[] entries = new PredictionCache.Entry[to - from];
+        boolean anyCompiled = false;
+        for (int s = from; s < to; s++) {
+            if (compiled[s] != null && compiled[s].numFeatures() > X.cols()) {
+                throw new IllegalArgumentException("Model " + s + " uses " + compiled[s].numFeatures()
+                        + " features, destination " + dst + " has " + X.cols());
+            }
+            PredictionCache.Entry hit = cache != null && n > 0 ? cache.get(models.get(s), X) : null;
+            if (hit != null) {
+                errors.set(s, dst, hit.error(y));
+            } else if (compiled[s] != null) {
+                todo[s - from] = compiled[s];
+                if (cache != null) entries[s - from] = new PredictionCache.Entry(n, compiled[s].numClasses(), version);
+                anyCompiled = true;
+            } else {
+                errors.set(s, dst, eval.computeError(models.get(s), X, y));
+            }
+        }
+        if (!anyCompiled || n == 0) {
+            for (int s = from; s < to; s++) if (todo[s - from] != null) errors.set(s, dst, 0.0);
+            return;
+        }
+
+        int d = X.cols();
+        int block = Math.min(CompiledForest.BLOCK, n);
+        double[] rows = new double[block * d];
+        double[] col = new double[block];
+        int[] pred = new int[block];
+        int maxClasses = 2;
+        for (CompiledForest cf : todo) if (cf != null) maxClasses = Math.max(maxClasses, cf.numClasses());
+        int[] votes = new int[block * maxClasses];
+
+        for (int r0 = 0; r0 < n; r0 += block) {
+            int len = Math.min(block, n - r0);
+            CompiledForest.gatherBlock(X, r0, len, rows, col);
+            for (int t = 0; t < todo.length; t++) {
+                CompiledForest cf = todo[t];
+                if (cf == null) continue;
+                cf.predictBlock(rows, d, len, votes, pred, 0);
+                int c = 0;
+                for (int r = 0; r < len; r++) if (pred[r] == y.get(r0 + r)) c++;
+                correct[t] += c;
+                if (entries[t] != null) entries[t].fill(r0, len, pred, votes, cf.numClasses(), cf.numTrees());
+            }
+        }
+        for (int t = 0; t < todo.length; t++) {
+            if (todo[t] == null) continue;
+            errors.set(from + t, dst, 1.0 - ((double) correct[t] / n));
+            if (entries[t] != null) cache.put(models.get(from + t), X, entries[t]);
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package tapd.model;
+
+import smile.classification.RandomForest;
+import smile.data.DataFrame;
+import smile.data.Tuple;
+import smile.data.vector.DoubleVector;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Micro-benchmark for forest prediction over a validation matrix (the N x N transfer loop).
+ * Compares the previous per-row path (one-row DataFrame of d DoubleVectors and "f"+j
+ * names per sample) with Evaluator.predict (cached schema, one reused Tuple).
+ * Both paths must return the same predictions; the run aborts otherwise.
+ *
+ * Data is synthetic (Gaussian features, label from a noisy linear rule) so the
+ * forest has realistic depth; only prediction is timed, not training.
+ *
+ * Usage: java tapd.model.PredictBenchmark [rows=20000] [cols=32] [trees=100] [rounds=5]
+ */
+public class PredictBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int trees = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        Random rnd = new Random(42);
+        double[][] X = new double[rows][cols];
+        int[] y = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            double s = 0.0;
+            for (int j = 0; j < cols; j++) {
+                X[i][j] = rnd.nextGaussian();
+                if (j % 4 == 0) s += X[i][j];
+            }
+            y[i] = s + 0.5 * rnd.nextGaussian() > 0 ? 1 : 0;
+        }
+        FeatureMatrix M = FeatureMatrix.of(X);
+        RandomForest model = new ModelTrainer().trainRandomForest(M, LabelVector.of(y), trees, 42L);
+        Evaluator evaluator = new Evaluator();
+        System.out.println("=== Predict benchmark: rows=" + rows + " cols=" + cols + " trees=" + trees + " ===");
+
+        // warm-up and equivalence check
+        int[] a = perRow(model, X);
+        int[] b = evaluator.predict(model, M);
+        for (int i = 0; i < rows; i++) {
+            if (a[i] != b[i]) throw new IllegalStateException("Prediction mismatch at row " + i);
+        }
+
+        for (int r = 0; r < rounds; r++) {
+            report("per-row DataFrame", () -> perRow(model, X));
+            report("batch (reused)   ", () -> evaluator.predict(model, M));
+        }
+    }
+
+    // ---- previous implementation (one-row DataFrame per sample) ----
+    static int[] perRow(RandomForest model, double[][] X) {
+        int[] out = new int[X.length];
+        for (int i = 0; i < X.length; i++) out[i] = model.predict(makeTuple(X[i]));
+        return out;
+    }
+
+    private static Tuple makeTuple(double[] x) {
+        int d = x.length;
+        DoubleVector[] cols = new DoubleVector[d];
+        for (int j = 0; j < d; j++) {
+            cols[j] = DoubleVector.of("f" + j, new double[]{x[j]});
+        }
+        DataFrame df = DataFrame.of(cols);
+        return df.get(0);
+    }
+
+    private static void report(String name, Runnable work) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long gcCount0 = 0, gcTime0 = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount0 += Math.max(0, gc.getCollectionCount());
+            gcTime0 += Math.max(0, gc.getCollectionTime());
+        }
+        long alloc0 = threads.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+
+        work.run();
+
+        long t1 = System.nanoTime();
+        long alloc1 = threads.getThreadAllocatedBytes(tid);
+        long gcCount1 = 0, gcTime1 = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount1 += Math.max(0, gc.getCollectionCount());
+            gcTime1 += Math.max(0, gc.getCollectionTime());
+        }
+        System.out.printf("%s time=%7.1f ms  allocated=%8.1f MB  gcCount=%3d  gcTime=%5d ms%n",
+                name, (t1 - t0) / 1e6, (alloc1 - alloc0) / (1024.0 * 1024.0),
+                gcCount1 - gcCount0, gcTime1 - gcTime0);
+    }
+}
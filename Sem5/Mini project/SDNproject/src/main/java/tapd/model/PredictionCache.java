@@ -0,0 +1,168 @@
+package tapd.model;
+
+import smile.classification.RandomForest;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-row predictions of a model on a dataset, kept so accuracy, transfer errors and
+ * confidence scoring do not predict the same rows again.
+ *
+ * Keyed weakly by model identity and then weakly by matrix identity, so an entry goes
+ * away with its model or with its matrix: transient views (coresets, per-call views)
+ * do not keep their predictions alive. An entry is only returned while the matrix
+ * version() is the one it was computed at, so writing to the rows (e.g. re-normalising
+ * in place) invalidates it.
+ *
+ * Entries are compact: one byte per row for the class (int[] only when a model has
+ * more than 127 classes) and one float per row and class for the posterior, i.e. the
+ * share of trees voting for that class (one-hot for forests predicted through SMILE).
+ *
+ * Usage:
+ *   evaluator.cache = new PredictionCache();
+ *   double acc = evaluator.computeAccuracy(m, testX, testY);  // predicts and stores
+ *   PredictionCache.Entry e = evaluator.predictions(m, testX); // cache hit
+ */
+public class PredictionCache {
+
+    private final Map<RandomForest, Map<FeatureMatrix, Entry>> byModel = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Cached predictions of model on X, or null (counts a hit or a miss). */
+    public Entry get(RandomForest model, FeatureMatrix X) {
+        Map<FeatureMatrix, Entry> m = byModel.get(model);
+        Entry e = null;
+        if (m != null) {
+            synchronized (m) { e = m.get(X); }
+        }
+        if (e != null && e.version == X.version() && e.rows == X.rows()) {
+            hits.incrementAndGet();
+            return e;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Store e as the predictions of model on X (replaces an older version). */
+    public void put(RandomForest model, FeatureMatrix X, Entry e) {
+        Map<FeatureMatrix, Entry> m;
+        synchronized (byModel) { m = byModel.computeIfAbsent(model, k -> new WeakHashMap<>()); }
+        synchronized (m) { m.put(X, e); }
+    }
+
+    public void clear() {
+        byModel.clear();
+    }
+
+    /** Number of cached (model, matrix) entries. */
+    public int size() {
+        int n = 0;
+        synchronized (byModel) {
+            for (Map<FeatureMatrix, Entry> m : byModel.values()) {
+                synchronized (m) { n += m.size(); }
+            }
+        }
+        return n;
+    }
+
+    public long sizeInBytes() {
+        long b = 0;
+        synchronized (byModel) {
+            for (Map<FeatureMatrix, Entry> m : byModel.values()) {
+                synchronized (m) { for (Entry e : m.values()) b += e.sizeInBytes(); }
+            }
+        }
+        return b;
+    }
+
+    public long hits() { return hits.get(); }
+    public long misses() { return misses.get(); }
+
+    @Override
+    public String toString() {
+        return "PredictionCache{entries=" + size() + ", bytes=" + sizeInBytes()
+                + ", hits=" + hits() + ", misses=" + misses() + "}";
+    }
+
+    /** Predictions and posteriors of one model on one matrix version. */
+    public static final class Entry {
+        public final int rows;
+        public final int numClasses;
+        final long version;
+        private final byte[] pred;        // class per row when numClasses <= 127
+        private final int[] wide;         // otherwise
+        private final float[] posterior;  // rows * numClasses, row-major
+
+        Entry(int rows, int numClasses, long version) {
+            this.rows = rows;
+            this.numClasses = numClasses;
+            this.version = version;
+            if (numClasses <= Byte.MAX_VALUE) {
+                pred = new byte[rows];
+                wide = null;
+            } else {
+                pred = null;
+                wide = new int[rows];
+            }
+            posterior = new float[Math.multiplyExact(rows, numClasses)];
+        }
+
+        public int pred(int i) { return pred != null ? pred[i] : wide[i]; }
+
+        /** Share of trees voting class c on row i. */
+        public float posterior(int i, int c) { return posterior[i * numClasses + c]; }
+
+        /** Largest posterior of row i (how sure the forest is). */
+        public float confidence(int i) {
+            float best = 0f;
+            for (int c = 0, k = i * numClasses; c < numClasses; c++, k++) best = Math.max(best, posterior[k]);
+            return best;
+        }
+
+        public int[] predictions() {
+            int[] out = new int[rows];
+            for (int i = 0; i < rows; i++) out[i] = pred(i);
+            return out;
+        }
+
+        public int correct(LabelVector y) {
+            int c = 0;
+            for (int i = 0; i < rows; i++) if (pred(i) == y.get(i)) c++;
+            return c;
+        }
+
+        /** Same arithmetic as Evaluator.computeError. */
+        public double error(LabelVector y) {
+            if (rows == 0) return 0.0;
+            return 1.0 - ((double) correct(y) / rows);
+        }
+
+        public long sizeInBytes() {
+            return (pred != null ? (long) rows : rows * 4L) + posterior.length * 4L;
+        }
+
+        // Rows [off, off + len): classes from pred[0..len), vote counts from votes (stride voteStride)
+        void fill(int off, int len, int[] p, int[] votes, int voteStride, int numTrees) {
+            float inv = numTrees == 0 ? 0f : 1f / numTrees;
+            for (int r = 0; r < len; r++) {
+                if (pred != null) pred[off + r] = (byte) p[r];
+                else wide[off + r] = p[r];
+                int src = r * voteStride, dst = (off + r) * numClasses;
+                for (int c = 0; c < numClasses; c++) posterior[dst + c] = votes[src + c] * inv;
+            }
+        }
+
+        // Row i predicted without votes: posterior 1 for the class
+        void setOneHot(int i, int cls) {
+            if (pred != null) pred[i] = (byte) cls;
+            else wide[i] = cls;
+            if (cls >= 0 && cls < numClasses) posterior[i * numClasses + cls] = 1f;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package tapd.model;
+
+import smile.classification.DecisionTree;
+import smile.classification.RandomForest;
+import smile.data.Tuple;
+import tapd.data.FeatureMatrix;
+import tapd.data.LabelVector;
+
+/**
+ * Prediction of every tree of a forest on every row of one dataset, recorded once so
+ * the error of the forest made of the first k trees can be read for any k without
+ * retraining or predicting again (a forest-size sweep).
+ *
+ * Stored tree-major and compact: binary forests use one bit per (tree, row), others
+ * one byte. Prefix votes follow CompiledForest / RandomForest.predict: majority of the
+ * first k trees, ties to the lowest class.
+ *
+ * Usage:
+ *   TreeVotes v = evaluator.treeVotes(model, X);
+ *   double[] curve = v.errorCurve(y);   // curve[k - 1] = error with k trees
+ */
+public final class TreeVotes {
+    public final int numTrees;
+    public final int rows;
+    public final int numClasses;
+    private final int words;      // longs per tree (binary)
+    private final long[] bits;    // binary: bit i of tree t = class of row i
+    private final byte[] bytes;   // otherwise: bytes[t * rows + i]
+
+    TreeVotes(int numTrees, int rows, int numClasses) {
+        if (numClasses > Byte.MAX_VALUE) throw new IllegalArgumentException("Too many classes for TreeVotes: " + numClasses);
+        this.numTrees = numTrees;
+        this.rows = rows;
+        this.numClasses = Math.max(2, numClasses);
+        this.words = (rows + 63) >>> 6;
+        if (this.numClasses == 2) {
+            bits = new long[Math.multiplyExact(numTrees, words)];
+            bytes = null;
+        } else {
+            bits = null;
+            bytes = new byte[Math.multiplyExact(numTrees, rows)];
+        }
+    }
+
+    /** Record every tree of a compiled forest on X (block-wise, like CompiledForest.predict). */
+    static TreeVotes record(CompiledForest cf, FeatureMatrix X) {
+        int n = X.rows(), d = X.cols();
+        if (d < cf.numFeatures()) throw new IllegalArgumentException("Forest uses " + cf.numFeatures() + " features, matrix has " + d);
+        TreeVotes v = new TreeVotes(cf.numTrees(), n, cf.numClasses());
+        int block = Math.min(CompiledForest.BLOCK, Math.max(1, n));
+        double[] rows = new double[block * d];
+        double[] col = new double[block];
+        for (int r0 = 0; r0 < n; r0 += block) {
+            int len = Math.min(block, n - r0);
+            CompiledForest.gatherBlock(X, r0, len, rows, col);
+            for (int t = 0; t < v.numTrees; t++) {
+                for (int r = 0; r < len; r++) v.set(t, r0 + r, cf.predictTree(t, rows, r * d));
+            }
+        }
+        return v;
+    }
+
+    /** Record through SMILE's own trees (forests CompiledForest cannot read). */
+    static TreeVotes recordSmile(RandomForest model, FeatureMatrix X) {
+        DecisionTree[] trees = model.trees();
+        int n = X.rows();
+        int[][] pred = new int[trees.length][n];
+        double[] row = new double[X.cols()];
+        Tuple tuple = Tuple.of(row, Evaluator.schema(X.cols()));
+        int k = 2;
+        for (int i = 0; i < n; i++) {
+            X.copyRow(i, row);
+            for (int t = 0; t < trees.length; t++) {
+                int c = trees[t].predict(tuple);
+                pred[t][i] = c;
+                k = Math.max(k, c + 1);
+            }
+        }
+        TreeVotes v = new TreeVotes(trees.length, n, k);
+        for (int t = 0; t < trees.length; t++) {
+            for (int i = 0; i < n; i++) v.set(t, i, pred[t][i]);
+        }
+        return v;
+    }
+
+    private void set(int t, int i, int c) {
+        if (bits != null) {
+            if (c != 0) bits[t * words + (i >>> 6)] |= 1L << i;
+        } else {
+            bytes[t * rows + i] = (byte) c;
+        }
+    }
+
+    /** Class predicted by tree t for row i. */
+    public int get(int t, int i) {
+        if (bits != null) return (int) (bits[t * words + (i >>> 6)] >>> i) & 1;
+        return bytes[t * rows + i];
+    }
+
+    /** Error of the first k trees' vote for every k = 1..numTrees (index k - 1). */
+    public double[] errorCurve(LabelVector y) {
+        double[] curve = new double[numTrees];
+        if (rows == 0) return curve;
+        int[] label = new int[rows];
+        for (int i = 0; i < rows; i++) label[i] = y.get(i);
+        if (bits != null) {
+            int[] ones = new int[rows];
+            for (int t = 0; t < numTrees; t++) {
+                int k = t + 1, correct = 0;
+                for (int i = 0; i < rows; i++) {
+                    ones[i] += get(t, i);
+                    int p = 2 * ones[i] > k ? 1 : 0;   // tie -> class 0
+                    if (p == label[i]) correct++;
+                }
+                curve[t] = 1.0 - ((double) correct / rows);
+            }
+        } else {
+            int C = numClasses;
+            int[] votes = new int[rows * C];
+            int[] best = new int[rows];
+            for (int t = 0; t < numTrees; t++) {
+                int correct = 0;
+                for (int i = 0; i < rows; i++) {
+                    int c = get(t, i), base = i * C;
+                    int v = ++votes[base + c];
+                    int b = best[i];
+                    if (c != b && (v > votes[base + b] || (v == votes[base + b] && c < b))) best[i] = b = c;
+                    if (b == label[i]) correct++;
+                }
+                curve[t] = 1.0 - ((double) correct / rows);
+            }
+        }
+        return curve;
+    }
+
+    /** Error of the first k trees (1 <= k <= numTrees). */
+    public double error(int k, LabelVector y) {
+        if (k < 1 || k > numTrees) throw new IllegalArgumentException("k must be in 1.." + numTrees + ": " + k);
+        return errorCurve(y)[k - 1];
+    }
+
+    public long sizeInBytes() {
+        return bits != null ? bits.length * 8L : bytes.length;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeVotes{trees=" + numTrees + ", rows=" + rows + ", classes=" + numClasses
+                + ", bytes=" + sizeInBytes() + "}";
+    }
+}
@@ -1,11 +1,11 @@
 package tapd.net;
 
 import com.google.gson.Gson;
-import org.apache.http.client.methods.*;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.*;
 
+import tapd.data.FeatureStats;
 import tapd.detect.OutlierDetector;
+import tapd.model.ErrorMatrix;
 import tapd.detect.Voter;
 import tapd.detect.CommandCenter;
 import tapd.detect.AutoDetector; //  Auto-detection class
@@ -37,52 +37,61 @@ public class CommandCenterApp {
         System.out.println("=== TAPD SDN (Distributed) ===");
         System.out.println("Controllers = " + controllers.length);
 
-        CloseableHttpClient client = HttpClients.createDefault();
+        // CONCURRENT=true: train / evaluate all controllers in parallel over a keep-alive pool
+        boolean concurrent = Boolean.parseBoolean(System.getenv().getOrDefault("CONCURRENT", "false"));
+        int perHost = Integer.parseInt(System.getenv().getOrDefault("PER_HOST", "2"));
+        CloseableHttpClient client = concurrent
+                ? ControllerFleet.pooledClient(controllers.length, perHost)
+                : HttpClients.createDefault();
+        ControllerFleet fleet = new ControllerFleet(client, controllers, perHost);
+        fleet.concurrent = concurrent;
+        // Straggler tolerance: per-call timeouts, hedged /evaluate, whole-round budget (ms, 0 = off)
+        fleet.callTimeoutMs = Integer.parseInt(System.getenv().getOrDefault("CALL_TIMEOUT_MS", "0"));
+        fleet.trainTimeoutMs = Integer.parseInt(System.getenv().getOrDefault("TRAIN_TIMEOUT_MS", "0"));
+        fleet.hedgeAfterMs = Integer.parseInt(System.getenv().getOrDefault("HEDGE_AFTER_MS", "0"));
+        fleet.roundBudgetMs = Long.parseLong(System.getenv().getOrDefault("ROUND_BUDGET_MS", "0"));
+        // MODEL_BY_HASH=true: /evaluate carries model hashes, controllers pull and cache models themselves
+        fleet.contentAddressed = Boolean.parseBoolean(System.getenv().getOrDefault("MODEL_BY_HASH", "false"));
+        // MODEL_FORMAT=binary: ForestCodec octet-stream instead of Java serialization + Base64 JSON
+        fleet.binaryModels = "binary".equals(System.getenv().getOrDefault("MODEL_FORMAT", "json"));
+        // BATCH_EVALUATE=true: one /evaluateBatch per controller (N requests per round instead of N^2)
+        fleet.batch = Boolean.parseBoolean(System.getenv().getOrDefault("BATCH_EVALUATE", "false"));
+        long roundStart = System.currentTimeMillis();
+        fleet.startRound();
+
+        // -------- 0. Optional global normaliser (merge per-controller stats, no raw data moved) --------
+        if (Boolean.parseBoolean(System.getenv().getOrDefault("GLOBAL_NORMALIZER", "false"))) {
+            FeatureStats global = fleet.installGlobalNormalizer();
+            System.out.println("Installed global normaliser over " + global.count + " rows");
+        }
 
         // -------- 1. Train models --------
-        for (int i = 0; i < controllers.length; i++) {
-            HttpPost post = new HttpPost(controllers[i] + "/train");
-            post.setEntity(new StringEntity("{}"));
-            post.setHeader("Content-Type", "application/json");
-            client.execute(post).close();
-            System.out.println("Trained model for controller " + i);
-        }
+        fleet.trainAll();
 
         // -------- 2. Fetch models --------
-        List<String> models = new ArrayList<>();
-        for (String ctrl : controllers) {
-            HttpGet get = new HttpGet(ctrl + "/getModel");
-            String body = new String(client.execute(get).getEntity().getContent().readAllBytes());
-            Map<String, Object> map = gson.fromJson(body, Map.class);
-            models.add((String) map.get("modelBase64"));
-        }
+        List<String> models = fleet.fetchModels();
 
         // -------- 3. Cross-evaluate (errors matrix) --------
-        List<List<Double>> errors = new ArrayList<>();
-        for (int i = 0; i < controllers.length; i++) {
-            List<Double> row = new ArrayList<>();
-            for (int j = 0; j < controllers.length; j++) {
-                HttpPost post = new HttpPost(controllers[j] + "/evaluate");
-                post.setEntity(new StringEntity(gson.toJson(Map.of("modelBase64", models.get(i)))));
-                post.setHeader("Content-Type", "application/json");
-                String body = new String(client.execute(post).getEntity().getContent().readAllBytes());
-                Map<String, Object> result = gson.fromJson(body, Map.class);
-                row.add((Double) result.get("error"));
-            }
-            errors.add(row);
+        ErrorMatrix errors = fleet.crossEvaluate(models);
+        String evalRequests = fleet.batch
+                ? controllers.length + " batch requests"
+                : controllers.length * controllers.length + " evaluations";
+        System.out.println("Round (train + fetch + " + evalRequests + ") took "
+                + (System.currentTimeMillis() - roundStart) + " ms" + (concurrent ? " (concurrent, " + perHost + " per host)" : ""));
+        Map<String, Object> roundReport = fleet.report(errors);
+        System.out.println("Round traffic at the command center: " + roundReport.get("bytesOut") + " B sent, "
+                + roundReport.get("bytesIn") + " B received" + (fleet.contentAddressed ? " (models by hash)" : ""));
+        boolean partialRound = (Integer) roundReport.get("missingCount") > 0;
+        if (partialRound) {
+            System.out.println("Partial round: " + roundReport.get("missingCount") + " cells missing "
+                    + roundReport.get("missingCells") + ", unavailable controllers " + roundReport.get("unavailable")
+                    + ", hedged calls " + roundReport.get("hedges"));
         }
         IOUtils.writeErrorsMatrixCSV(errors, new File("errors_matrix.csv"));
         System.out.println("Saved errors_matrix.csv");
 
         // -------- 4. Plot average transfer error per source --------
-        int Nsrc = errors.size();
-        double[] avgErrors = new double[Nsrc];
-        for (int i = 0; i < Nsrc; i++) {
-            List<Double> row = errors.get(i);
-            double sum = 0.0;
-            for (Double v : row) sum += v;
-            avgErrors[i] = row.isEmpty() ? 0.0 : sum / row.size();
-        }
+        double[] avgErrors = errors.rowMeans();
         File outFile = new File("avg_errors_line.png");
         SimplePlot.drawLineChart(
                 avgErrors,
@@ -97,17 +106,23 @@ public class CommandCenterApp {
         OutlierDetector od = new OutlierDetector();
         List<Set<Integer>> votes = new ArrayList<>();
         double eta = 0.1;
-        for (int s = 0; s < errors.size(); s++) {
-            Set<Integer> suspects = od.detectIQROutliers(errors.get(s), eta);
-            votes.add(suspects);
-            System.out.println("Source " + s + " suspects: " + suspects);
+        if (partialRound) {
+            // sources with fewer than 3 observed cells use the threshold of all observed cells
+            Map<String, Object> partial = od.detectPartialOutliers(errors, eta, 3);
+            votes = (List<Set<Integer>>) partial.get("votes");
+            System.out.println("Sources on the global threshold: " + partial.get("fallbackRows")
+                    + ", sources without results: " + partial.get("emptyRows"));
+        } else {
+            for (int s = 0; s < errors.rows(); s++) votes.add(od.detectIQROutliers(errors.row(s), eta));
         }
+        for (int s = 0; s < votes.size(); s++) System.out.println("Source " + s + " suspects: " + votes.get(s));
         IOUtils.writeVotesCSV(votes, new File("votes_per_source.csv"));
 
         // -------- 6. Voting aggregation (Original TAPD) --------
         Voter voter = new Voter();
         Map<Integer, Integer> freq = voter.aggregateVotes(votes);
         System.out.println("Vote frequencies: " + freq);
+        if (partialRound) System.out.println("Vote rates (over observing sources): " + voter.voteRates(votes, errors));
 
         // -------- 7. Final suspects (Original TAPD) --------
         CommandCenter cc = new CommandCenter();
@@ -119,11 +134,16 @@ public class CommandCenterApp {
         System.out.println("Model confidence levels: " + Arrays.toString(confidence));
 
         Map<Integer, Double> weightedFreq = new HashMap<>();
-        for (int i = 0; i < controllers.length; i++) {
-            Set<Integer> vset = (i < votes.size()) ? votes.get(i) : Collections.emptySet();
-            for (int suspect : vset) {
-                weightedFreq.put(suspect,
-                        weightedFreq.getOrDefault(suspect, 0.0) + confidence[i]);
+        // with missing cells, weight by the confidence of the sources that actually evaluated each controller
+        if (partialRound) {
+            weightedFreq = tapd.detect.ConfidenceEvaluator.weightedVoteRates(votes, confidence, errors);
+        } else {
+            for (int i = 0; i < controllers.length; i++) {
+                Set<Integer> vset = (i < votes.size()) ? votes.get(i) : Collections.emptySet();
+                for (int suspect : vset) {
+                    weightedFreq.put(suspect,
+                            weightedFreq.getOrDefault(suspect, 0.0) + confidence[i]);
+                }
             }
         }
 
@@ -0,0 +1,566 @@
+package tapd.net;
+
+import com.google.gson.Gson;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import tapd.data.FeatureStats;
+import tapd.model.ErrorMatrix;
+import tapd.model.ForestCodec;
+
+import java.io.ByteArrayInputStream;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The REST calls of one TAPD round against a set of ControllerService endpoints
+ * (global normaliser, /train, /getModel, /evaluate), shared by CommandCenterApp
+ * and RegionalCommandCenter. Row i / column j of the errors matrix are urls[i] / urls[j].
+ *
+ * With concurrent = true every step fans out on virtual threads: all controllers train at
+ * once and the N x N evaluations run in parallel, at most perHost requests in flight per
+ * controller (a semaphore per URL). Use pooledClient(...) so connections are kept alive
+ * and the pool allows perHost connections per route. Each result is written to its own
+ * (i, j) cell, so the matrix does not depend on completion order.
+ *
+ * Straggler tolerance (any of these set = partial mode):
+ *   callTimeoutMs   connect / read timeout of /stats, /normalizer, /getModel and /evaluate
+ *   trainTimeoutMs  the same for /train (training takes much longer than one evaluation)
+ *   hedgeAfterMs    an /evaluate without an answer this long after it was sent is sent a
+ *                   second time if the host has a free slot (at most one hedge per host at a
+ *                   time, within the perHost limit); the first answer wins, the other is aborted
+ *   roundBudgetMs   startRound() sets a deadline for train + fetch + evaluate; at the
+ *                   deadline outstanding requests are aborted
+ * In partial mode a failed or late call does not fail the round: a controller that could
+ * not train or return its model goes to unavailable (its row stays empty), and a failed
+ * evaluation leaves its cell NaN. report(errors) lists what is missing.
+ *
+ * With contentAddressed = true, fetchModels() returns model hashes (/modelHash) instead of
+ * Base64 models, and /evaluate only carries {"modelHash", "source"}: each controller pulls
+ * a model it has not cached from the source controller once (ControllerService ModelCache),
+ * so model bytes no longer pass through the command center at all. Controllers only pull
+ * from URLs in their PEERS list, so give them the same URLs as urls here.
+ *
+ * With binaryModels = true (and not contentAddressed), models are downloaded once in the
+ * ForestCodec binary format (/getModel?format=binary) and posted to /evaluate as
+ * application/octet-stream instead of Base64 JSON; fetchModels() then returns their hashes.
+ *
+ * With batch = true, crossEvaluate sends one /evaluateBatch per controller carrying all models
+ * (hash references when models are hashes), so a round takes N requests instead of N x N;
+ * each answer fills one column. Inline Base64 models (neither of the two modes above) are only
+ * accepted by controllers started with INLINE_JAVA_MODELS=true. Timeouts and hedging delays scale with the number of models.
+ *
+ * Usage:
+ *   ControllerFleet fleet = new ControllerFleet(client, urls);
+ *   fleet.startRound();
+ *   fleet.trainAll();
+ *   ErrorMatrix errors = fleet.crossEvaluate(fleet.fetchModels());
+ */
+public class ControllerFleet {
+    static Gson gson = new Gson();
+
+    public final String[] urls;
+    public boolean concurrent = false;
+    public boolean contentAddressed = false;
+    public boolean binaryModels = false;
+    public boolean batch = false;
+    public int callTimeoutMs = 0;
+    public int trainTimeoutMs = 0;
+    public int hedgeAfterMs = 0;
+    public long roundBudgetMs = 0;
+    /** Controllers whose /train or /getModel failed in the current round. */
+    public final Set<Integer> unavailable = ConcurrentHashMap.newKeySet();
+
+    private static final ExecutorService hedgeThreads = Executors.newVirtualThreadPerTaskExecutor();
+    private final CloseableHttpClient client;
+    private final Semaphore[] hostSlots;
+    private final Semaphore[] hedgeSlots;
+    private final Set<HttpRequestBase> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, byte[]> wire = new ConcurrentHashMap<>();   // binaryModels: hash -> ForestCodec bytes
+    private final AtomicInteger hedges = new AtomicInteger(), failures = new AtomicInteger(), late = new AtomicInteger();
+    private final AtomicLong bytesOut = new AtomicLong(), bytesIn = new AtomicLong();
+    private volatile long deadline = Long.MAX_VALUE;
+    private long roundStart = System.currentTimeMillis();
+
+    public ControllerFleet(CloseableHttpClient client, String[] urls) {
+        this(client, urls, 1);
+    }
+
+    /** perHost = max concurrent requests to one controller in concurrent mode. */
+    public ControllerFleet(CloseableHttpClient client, String[] urls, int perHost) {
+        this.client = client;
+        this.urls = urls;
+        this.hostSlots = new Semaphore[urls.length];
+        this.hedgeSlots = new Semaphore[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            hostSlots[i] = new Semaphore(Math.max(1, perHost), true);
+            hedgeSlots[i] = new Semaphore(1);
+        }
+    }
+
+    /** Keep-alive connection pool sized for hosts x perHost connections. */
+    public static CloseableHttpClient pooledClient(int hosts, int perHost) {
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setMaxTotal(Math.max(1, hosts * perHost));
+        cm.setDefaultMaxPerRoute(Math.max(1, perHost));
+        return HttpClients.custom().setConnectionManager(cm).build();
+    }
+
+    public int size() { return urls.length; }
+
+    /** True when timeouts, hedging or a round budget are set (failures leave gaps). */
+    public boolean partial() {
+        return callTimeoutMs > 0 || trainTimeoutMs > 0 || hedgeAfterMs > 0 || roundBudgetMs > 0;
+    }
+
+    /** Start a round: arm the roundBudgetMs deadline and reset unavailable and the counters. */
+    public void startRound() {
+        roundStart = System.currentTimeMillis();
+        deadline = roundBudgetMs > 0 ? roundStart + roundBudgetMs : Long.MAX_VALUE;
+        unavailable.clear();
+        hedges.set(0);
+        failures.set(0);
+        late.set(0);
+        bytesOut.set(0);
+        bytesIn.set(0);
+    }
+
+    /** Merge every controller's /stats and install the result with /normalizer. Returns it. */
+    public FeatureStats installGlobalNormalizer() throws Exception {
+        FeatureStats global = new FeatureStats();
+        for (String ctrl : urls) global = global.merge(gson.fromJson(get(ctrl + "/stats"), FeatureStats.class));
+        for (String ctrl : urls) post(ctrl + "/normalizer", gson.toJson(global));
+        return global;
+    }
+
+    public void trainAll() throws Exception {
+        if (partial()) {
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int i = 0; i < urls.length; i++) {
+                int c = i;
+                tasks.add(() -> onHost(c, () -> send(jsonPost(urls[c] + "/train", "{}"), trainTimeoutMs)));
+            }
+            List<Object> done = runWithinBudget(tasks);
+            for (int i = 0; i < urls.length; i++) if (done.get(i) == null) unavailable.add(i);
+            System.out.println("Trained models for " + (urls.length - unavailable.size()) + "/" + urls.length
+                    + " controllers" + (unavailable.isEmpty() ? "" : ", unavailable: " + new TreeSet<>(unavailable)));
+            return;
+        }
+        if (concurrent) {
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int i = 0; i < urls.length; i++) {
+                int c = i;
+                tasks.add(() -> { onHost(c, () -> post(urls[c] + "/train", "{}")); return null; });
+            }
+            runAll(tasks);
+            System.out.println("Trained models for " + urls.length + " controllers concurrently");
+            return;
+        }
+        for (int i = 0; i < urls.length; i++) {
+            post(urls[i] + "/train", "{}");
+            System.out.println("Trained model for controller " + urls[i]);
+        }
+    }
+
+    /**
+     * Base64 model of every controller (its hash when contentAddressed or binaryModels), in
+     * urls order; null for unavailable ones in partial mode.
+     */
+    public List<String> fetchModels() throws Exception {
+        List<String> models = new ArrayList<>();
+        wire.clear();
+        if (partial()) {
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int i = 0; i < urls.length; i++) {
+                int c = i;
+                tasks.add(() -> unavailable.contains(c) ? null : fetchModel(c));
+            }
+            List<Object> bodies = runWithinBudget(tasks);
+            for (int i = 0; i < urls.length; i++) {
+                if (bodies.get(i) == null) unavailable.add(i);
+                models.add((String) bodies.get(i));
+            }
+            return models;
+        }
+        if (concurrent) {
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int i = 0; i < urls.length; i++) {
+                int c = i;
+                tasks.add(() -> fetchModel(c));
+            }
+            for (Object model : runAll(tasks)) models.add((String) model);
+            return models;
+        }
+        for (int i = 0; i < urls.length; i++) models.add(fetchModel(i));
+        return models;
+    }
+
+    // Model reference of controller c: its hash, the hash of its wire bytes (kept in wire), or Base64
+    private String fetchModel(int c) throws Exception {
+        if (contentAddressed) return field(onHost(c, () -> get(urls[c] + "/modelHash")), "modelHash");
+        if (binaryModels) {
+            byte[] bytes = onHost(c, () -> sendBytes(new HttpGet(urls[c] + "/getModel?format=binary"), callTimeoutMs));
+            if (!ForestCodec.isEncoded(new ByteArrayInputStream(bytes))) {
+                throw new IllegalStateException(urls[c] + " returned no binary model: " + new String(bytes));
+            }
+            String hash = ModelCache.hashOf(bytes);
+            wire.put(hash, bytes);
+            return hash;
+        }
+        return field(onHost(c, () -> get(urls[c] + "/getModel")), "modelBase64");
+    }
+
+    private static String field(String body, String key) {
+        Map<String, Object> map = gson.fromJson(body, Map.class);
+        return (String) map.get(key);
+    }
+
+    /** errors[i][j] = error of model i on controller j's data (NaN if missing in partial mode). */
+    public ErrorMatrix crossEvaluate(List<String> models) throws Exception {
+        if (batch) return crossEvaluateBatch(models);
+        if (partial()) {
+            ErrorMatrix errors = ErrorMatrix.unobserved(models.size(), urls.length);
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int j = 0; j < urls.length; j++) {
+                for (int i = 0; i < models.size(); i++) {
+                    if (models.get(i) == null) continue;
+                    int src = i, dst = j;
+                    tasks.add(() -> { errors.set(src, dst, evaluate(dst, src, models.get(src))); return Boolean.TRUE; });
+                }
+            }
+            runWithinBudget(tasks);
+            return errors;
+        }
+        ErrorMatrix errors = new ErrorMatrix(models.size(), urls.length);
+        if (concurrent) {
+            List<Callable<Object>> tasks = new ArrayList<>();
+            // destination-major order spreads the first requests over all hosts
+            for (int j = 0; j < urls.length; j++) {
+                for (int i = 0; i < models.size(); i++) {
+                    int src = i, dst = j;
+                    tasks.add(() -> { errors.set(src, dst, evaluate(dst, src, models.get(src))); return null; });
+                }
+            }
+            runAll(tasks);
+            return errors;
+        }
+        for (int i = 0; i < models.size(); i++) {
+            for (int j = 0; j < urls.length; j++) errors.set(i, j, evaluate(j, i, models.get(i)));
+        }
+        return errors;
+    }
+
+    // One /evaluateBatch per destination, each writing its own column
+    private ErrorMatrix crossEvaluateBatch(List<String> models) throws Exception {
+        ErrorMatrix errors = partial()
+                ? ErrorMatrix.unobserved(models.size(), urls.length)
+                : new ErrorMatrix(models.size(), urls.length);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int j = 0; j < urls.length; j++) {
+            int dst = j;
+            tasks.add(() -> {
+                double[] col = evaluateBatch(dst, models);
+                for (int i = 0; i < col.length; i++) errors.set(i, dst, col[i]);
+                return Boolean.TRUE;
+            });
+        }
+        if (partial()) runWithinBudget(tasks);
+        else if (concurrent) runAll(tasks);
+        else for (Callable<Object> t : tasks) t.call();
+        return errors;
+    }
+
+    /**
+     * Errors of all models (as returned by fetchModels, nulls skipped) on controller j in one
+     * /evaluateBatch request: out[i] = errors[i][j], NaN where the controller could not load model i.
+     */
+    public double[] evaluateBatch(int j, List<String> models) throws Exception {
+        List<Map<String, String>> refs = new ArrayList<>();
+        List<Integer> index = new ArrayList<>();
+        for (int i = 0; i < models.size(); i++) {
+            String m = models.get(i);
+            if (m == null) continue;
+            refs.add(contentAddressed || binaryModels ? Map.of("modelHash", m, "source", urls[i]) : Map.of("modelBase64", m));
+            index.add(i);
+        }
+        double[] out = new double[models.size()];
+        Arrays.fill(out, Double.NaN);
+        if (refs.isEmpty()) return out;
+        String json = gson.toJson(Map.of("models", refs));
+        String body = call(j, () -> jsonPost(urls[j] + "/evaluateBatch", json), refs.size());
+        Map<String, Object> result = gson.fromJson(body, Map.class);
+        if (!(result.get("errors") instanceof List)) throw new IllegalStateException(urls[j] + " could not evaluate batch: " + body);
+        List<Object> errs = (List<Object>) result.get("errors");
+        for (int k = 0; k < errs.size() && k < index.size(); k++) {
+            if (errs.get(k) instanceof Double) out[index.get(k)] = (Double) errs.get(k);
+        }
+        return out;
+    }
+
+    /** Error of one base64 model on controller j (waits for a slot on that host, hedged if set). */
+    public double evaluate(int j, String modelBase64) throws Exception {
+        String json = gson.toJson(Map.of("modelBase64", modelBase64));
+        return evaluate(j, () -> jsonPost(urls[j] + "/evaluate", json));
+    }
+
+    /** Error of controller src's model (as returned by fetchModels) on controller j. */
+    public double evaluate(int j, int src, String model) throws Exception {
+        if (contentAddressed) {
+            String json = gson.toJson(Map.of("modelHash", model, "source", urls[src]));
+            return evaluate(j, () -> jsonPost(urls[j] + "/evaluate", json));
+        }
+        if (binaryModels) return evaluate(j, () -> binaryPost(urls[j] + "/evaluate", wire.get(model)));
+        return evaluate(j, model);
+    }
+
+    interface PostFactory {
+        HttpPost make() throws Exception;
+    }
+
+    private double evaluate(int j, PostFactory request) throws Exception {
+        String body = call(j, request, 1);
+        Map<String, Object> result = gson.fromJson(body, Map.class);
+        if (!(result.get("error") instanceof Double)) throw new IllegalStateException(urls[j] + " could not evaluate: " + body);
+        return (Double) result.get("error");
+    }
+
+    /**
+     * What the last round is missing. Map keys: "missingCells" ("i->j" strings), "missingCount",
+     * "unavailable" (controller indices), "hedges" (second requests sent), "failures" (calls that
+     * failed), "late" (calls still running at the deadline), "bytesOut" / "bytesIn" (request /
+     * response bodies of the round), "elapsedMs".
+     */
+    public Map<String, Object> report(ErrorMatrix errors) {
+        List<String> missing = new ArrayList<>();
+        for (int[] c : errors.missingCells()) missing.add(c[0] + "->" + c[1]);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("missingCells", missing);
+        out.put("missingCount", missing.size());
+        out.put("unavailable", new TreeSet<>(unavailable));
+        out.put("hedges", hedges.get());
+        out.put("failures", failures.get());
+        out.put("late", late.get());
+        out.put("bytesOut", bytesOut.get());
+        out.put("bytesIn", bytesIn.get());
+        out.put("elapsedMs", System.currentTimeMillis() - roundStart);
+        return out;
+    }
+
+    // POST to controller j within its host limit, hedged if set; timeouts are scaled for batches of models
+    private String call(int j, PostFactory request, int models) throws Exception {
+        int timeout = (int) Math.min(Integer.MAX_VALUE, (long) callTimeoutMs * models);
+        long hedgeAfter = (long) hedgeAfterMs * models;
+        return hedgeAfterMs > 0
+                ? hedged(j, request, timeout, hedgeAfter)
+                : onHost(j, () -> send(request.make(), timeout));
+    }
+
+    // Send within the host limit. If there is no answer hedgeAfter ms after it was sent, send a
+    // second copy only when the host has a free slot and no other hedge in flight; a first try
+    // that failed is retried once, waiting for a slot like any other request.
+    private String hedged(int host, PostFactory request, int timeout, long hedgeAfter) throws Exception {
+        HttpPost[] tries = { request.make(), request.make() };
+        try {
+            acquire(host);
+            CompletableFuture<String> first = attempt(tries[0], timeout, hostSlots[host]);
+            try {
+                return first.get(Math.min(hedgeAfter, remaining()), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException failed) {
+                hedges.incrementAndGet();
+                return onHost(host, () -> send(tries[1], timeout));
+            } catch (TimeoutException slow) {
+                // straggler: hedge below if the host has room
+            }
+            CompletableFuture<String> answer = first;
+            if (hedgeSlots[host].tryAcquire()) {
+                if (hostSlots[host].tryAcquire()) {
+                    hedges.incrementAndGet();
+                    answer = firstSuccess(first, attempt(tries[1], timeout, hostSlots[host], hedgeSlots[host]));
+                } else {
+                    hedgeSlots[host].release();
+                }
+            }
+            try {
+                return answer.get(remaining(), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+            }
+        } finally {
+            for (HttpPost p : tries) p.abort();   // the loser, or both at the deadline
+        }
+    }
+
+    // Runs one try on a hedge thread, then releases the slots it was sent under
+    private CompletableFuture<String> attempt(HttpPost req, int timeout, Semaphore... held) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(req, timeout);
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            } finally {
+                for (Semaphore s : held) s.release();
+            }
+        }, hedgeThreads);
+    }
+
+    // First successful answer of a and b; fails only when both fail
+    private static CompletableFuture<String> firstSuccess(CompletableFuture<String> a, CompletableFuture<String> b) {
+        CompletableFuture<String> winner = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (CompletableFuture<String> f : List.of(a, b)) {
+            f.whenComplete((body, ex) -> {
+                if (ex == null) winner.complete(body);
+                else if (failed.incrementAndGet() == 2) winner.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+            });
+        }
+        return winner;
+    }
+
+    interface Request<T> {
+        T send() throws Exception;
+    }
+
+    // At most perHost requests to urls[host] at a time; gives up at the round deadline
+    private <T> T onHost(int host, Request<T> r) throws Exception {
+        acquire(host);
+        try {
+            return r.send();
+        } finally {
+            hostSlots[host].release();
+        }
+    }
+
+    private void acquire(int host) throws Exception {
+        if (!hostSlots[host].tryAcquire(remaining(), TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("No slot on " + urls[host] + " before the round deadline");
+        }
+    }
+
+    // One virtual thread per task; results in task order, first failure rethrown
+    private static List<Object> runAll(List<Callable<Object>> tasks) throws Exception {
+        try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (Callable<Object> t : tasks) futures.add(exec.submit(t));
+            List<Object> out = new ArrayList<>();
+            for (Future<Object> f : futures) {
+                try {
+                    out.add(f.get());
+                } catch (ExecutionException ex) {
+                    futures.forEach(g -> g.cancel(true));
+                    throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Partial-mode runner: tasks run in parallel (one at a time unless concurrent) until the
+     * round deadline. Results in task order; null for a task that failed or was still running,
+     * whose request is then aborted.
+     */
+    private List<Object> runWithinBudget(List<Callable<Object>> tasks) throws InterruptedException {
+        ExecutorService exec = concurrent
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newSingleThreadExecutor(Thread.ofVirtual().factory());
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (Callable<Object> t : tasks) futures.add(exec.submit(t));
+            List<Object> out = new ArrayList<>();
+            for (Future<Object> f : futures) {
+                try {
+                    out.add(f.get(remaining(), TimeUnit.MILLISECONDS));
+                } catch (ExecutionException ex) {
+                    failures.incrementAndGet();
+                    System.err.println("Call failed: " + ex.getCause());
+                    out.add(null);
+                } catch (TimeoutException ex) {
+                    late.incrementAndGet();
+                    out.add(null);
+                }
+            }
+            return out;
+        } finally {
+            exec.shutdownNow();
+            for (HttpRequestBase req : inFlight) req.abort();
+            exec.close();
+        }
+    }
+
+    // Milliseconds left before the round deadline
+    private long remaining() {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    String get(String url) throws Exception {
+        return send(new HttpGet(url), callTimeoutMs);
+    }
+
+    String post(String url, String json) throws Exception {
+        return send(jsonPost(url, json), callTimeoutMs);
+    }
+
+    private static HttpPost jsonPost(String url, String json) throws Exception {
+        HttpPost post = new SizedPost(url, json.length());
+        post.setEntity(new StringEntity(json));
+        post.setHeader("Content-Type", "application/json");
+        return post;
+    }
+
+    private static HttpPost binaryPost(String url, byte[] body) {
+        HttpPost post = new SizedPost(url, body.length);
+        post.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_OCTET_STREAM));
+        return post;
+    }
+
+    // POST that remembers its body size for bytesOut
+    private static class SizedPost extends HttpPost {
+        final int length;
+        SizedPost(String url, int length) { super(url); this.length = length; }
+    }
+
+    private String send(HttpRequestBase req, int timeoutMs) throws Exception {
+        return new String(sendBytes(req, timeoutMs));
+    }
+
+    // Execute with an optional connect / read timeout; registered so the deadline can abort it
+    private byte[] sendBytes(HttpRequestBase req, int timeoutMs) throws Exception {
+        if (timeoutMs > 0) {
+            req.setConfig(RequestConfig.custom().setConnectTimeout(timeoutMs).setSocketTimeout(timeoutMs)
+                    .setConnectionRequestTimeout(timeoutMs).build());
+        }
+        inFlight.add(req);
+        try {
+            if (System.currentTimeMillis() >= deadline) throw new TimeoutException("Round budget used up");
+            if (req instanceof SizedPost p) bytesOut.addAndGet(p.length);
+            try (CloseableHttpResponse res = client.execute(req)) {
+                byte[] body = res.getEntity().getContent().readAllBytes();
+                bytesIn.addAndGet(body.length);
+                return body;
+            }
+        } finally {
+            inFlight.remove(req);
+        }
+    }
+}
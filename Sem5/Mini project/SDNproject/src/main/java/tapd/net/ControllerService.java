@@ -3,22 +3,57 @@ package tapd.net;
 import static spark.Spark.*;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
 import smile.classification.RandomForest;
 import tapd.data.DatasetReader;
+import tapd.data.FeatureMatrix;
+import tapd.data.FeatureStats;
+import tapd.data.LabelVector;
 import tapd.data.Preprocessor;
+import tapd.model.CompiledForest;
+import tapd.model.ForestCodec;
 import tapd.model.ModelTrainer;
 import tapd.model.Evaluator;
 import tapd.attack.Poisoner;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ControllerService {
     static Gson gson = new Gson();
-    private static double[][] localX;
-    private static int[] localY;
+    private static FeatureMatrix localX;
+    private static LabelVector localY;
     private static RandomForest localModel;
+    private static CompiledForest localCompiled;   // null if it cannot be compiled or disagreed with SMILE
     private static Evaluator evaluator = new Evaluator();
+    private static Preprocessor pre = new Preprocessor();
+    private static FeatureStats localStats;   // raw-data stats, shared via /stats
+    private static boolean normalized = false;
+
+    // Content-addressed models: own model in ForestCodec wire format + its hash (built on first use
+    // by the binary / by-hash modes), LRU of foreign models by hash
+    private static byte[] localModelWire;
+    private static String localModelHash;
+    private static boolean deflateModels = true;
+    private static int evalThreads = Runtime.getRuntime().availableProcessors();
+    private static ModelCache modelCache;
+    private static CloseableHttpClient peers;   // pulls /model/:hash from other controllers
+    private static Set<String> peerUrls = Set.of();   // the only allowed "source" URLs (env PEERS)
+    private static boolean inlineJavaModels = false;   // accept {"modelBase64"} entries in /evaluateBatch
 
     private static int id;                // Controller ID
     private static boolean compromised;   // is this controller poisoned?
@@ -28,19 +63,32 @@ public class ControllerService {
         id = Integer.parseInt(System.getenv().getOrDefault("ID", "0"));
         compromised = Boolean.parseBoolean(System.getenv().getOrDefault("COMPROMISED", "false"));
         double theta = Double.parseDouble(System.getenv().getOrDefault("THETA", "0.2"));
+        modelCache = new ModelCache(Integer.parseInt(System.getenv().getOrDefault("MODEL_CACHE", "32")),
+                Long.parseLong(System.getenv().getOrDefault("MODEL_CACHE_MB", "512")) << 20);
+        deflateModels = Boolean.parseBoolean(System.getenv().getOrDefault("MODEL_DEFLATE", "true"));
+        evalThreads = Integer.parseInt(System.getenv().getOrDefault("EVAL_THREADS", String.valueOf(evalThreads)));
+        // PEERS: comma-separated URLs of the other controllers; models by hash are only pulled from these
+        peerUrls = Arrays.stream(System.getenv().getOrDefault("PEERS", "").split(","))
+                .map(ControllerService::normalizeUrl).filter(u -> !u.isEmpty()).collect(Collectors.toSet());
+        // INLINE_JAVA_MODELS=true: /evaluateBatch also deserializes inline Java-serialized models (off by default)
+        inlineJavaModels = Boolean.parseBoolean(System.getenv().getOrDefault("INLINE_JAVA_MODELS", "false"));
 
         port(port);
 
         // -------- 1. Load local dataset --------
         String datasetPath = System.getenv().getOrDefault("DATASET", "C:\\Users\\aaksh\\IdeaProjects\\SDNproject\\UNR-IDD.xlsx");
+        boolean streaming = Boolean.parseBoolean(System.getenv().getOrDefault("STREAMING_LOAD", "true"));
+        boolean useCache = Boolean.parseBoolean(System.getenv().getOrDefault("DATASET_CACHE", "true"));
         DatasetReader dr = new DatasetReader();
-        Map<String,Object> raw = dr.load(datasetPath);
-        localX = (double[][]) raw.get("X");
-        localY = (int[]) raw.get("y");
-        Preprocessor pre = new Preprocessor();
-        localX = pre.fitTransform(localX);
+        Map<String,Object> raw = dr.loadMatrix(datasetPath, streaming, useCache);
+        localX = (FeatureMatrix) raw.get("matrix");
+        localY = (LabelVector) raw.get("labels");
+        if (localX.isReadOnly()) localX = localX.copy();   // normalised in place below
+        // Local stats in one parallel pass; normalisation is deferred until /train or /evaluate
+        // so a global normaliser posted to /normalizer can replace them first.
+        localStats = pre.fitParallel(localX);
 
-        System.out.printf("Controller %d running on port %d with rows=%d%n", id, port, localX.length);
+        System.out.printf("Controller %d running on port %d with rows=%d%n", id, port, localX.rows());
 
         // -------- 2. Poison dataset if compromised --------
         if (compromised) {
@@ -50,33 +98,275 @@ public class ControllerService {
 
         // -------- REST endpoints --------
 
+        // Partial normalisation stats of the raw local data (no rows leave the controller)
+        get("/stats", (req,res) -> gson.toJson(localStats));
+
+        // Install merged (global) stats; data is re-normalised, retrain afterwards
+        post("/normalizer", (req,res) -> {
+            FeatureStats global = gson.fromJson(req.body(), FeatureStats.class);
+            synchronized (ControllerService.class) {
+                if (normalized) pre.inverseTransformInPlace(localX);
+                pre.fit(global);
+                normalized = false;
+                ensureNormalized();
+            }
+            System.out.printf("Controller %d using global normaliser (rows=%d)%n", id, global.count);
+            return gson.toJson(Map.of("status","normalized","controller",id));
+        });
+
         // Train local model
         post("/train", (req,res) -> {
+            ensureNormalized();
             ModelTrainer trainer = new ModelTrainer();
-            localModel = trainer.trainRandomForest(localX, localY, 100, 42 + id);
+            RandomForest model = trainer.trainRandomForest(localX, localY, 100, 42 + id);
+            // the compiled form (and so the binary / by-hash modes) is only used if it predicts like SMILE here
+            int bad = evaluator.verifyCompiled(model, localX);
+            if (bad > 0) System.err.printf("Controller %d: compiled forest disagreed on %d rows, binary model disabled%n", id, bad);
+            setLocalModel(model, evaluator.compiled(model));
             System.out.println("Trained RandomForest model for controller " + id);
             return gson.toJson(Map.of("status","trained","controller",id));
         });
 
-        // Return local model
+        // Return local model: ForestCodec bytes with ?format=binary, else the Java-serialized model as Base64 JSON
         get("/getModel", (req,res) -> {
             if (localModel == null) return gson.toJson(Map.of("error","not trained"));
+            System.out.println("Exported model for controller " + id);
+            if ("binary".equals(req.queryParams("format"))) return binaryModel(res);
             byte[] bytes = SerializationUtils.serialize(localModel);
             String b64 = Base64.getEncoder().encodeToString(bytes);
-            System.out.println("Exported model for controller " + id);
             return gson.toJson(Map.of("modelBase64", b64, "controller", id));
         });
 
-        // Evaluate another model on local dataset
+        // Content address of the local model only (the command center then passes hashes around)
+        get("/modelHash", (req,res) -> {
+            if (localModel == null) return gson.toJson(Map.of("error","not trained"));
+            synchronized (ControllerService.class) {
+                byte[] wire = localWire();
+                if (wire == null) return notCompiled(res);
+                return gson.toJson(Map.of("modelHash", localModelHash, "controller", id, "bytes", wire.length));
+            }
+        });
+
+        // Local model by hash, pulled by peers that do not have it cached yet
+        get("/model/:hash", (req,res) -> {
+            if (localModel == null || localWire() == null || !req.params(":hash").equals(localModelHash)) {
+                res.status(404);
+                return gson.toJson(Map.of("error","unknown model"));
+            }
+            return binaryModel(res);
+        });
+
+        // Push a model into the cache ahead of /evaluate calls by hash (ForestCodec body only)
+        post("/models", (req,res) -> {
+            if (!isBinary(req.contentType())) {
+                res.status(415);
+                return gson.toJson(Map.of("error","send the model as " + ForestCodec.CONTENT_TYPE + " (ForestCodec)","controller",id));
+            }
+            String[] hash = new String[1];
+            try {
+                modelCache.put(req.raw().getInputStream(), hash);
+            } catch (IOException ex) {
+                return badModel(res, ex);
+            }
+            return gson.toJson(Map.of("modelHash", hash[0], "controller", id));
+        });
+
+        get("/cache", (req,res) -> gson.toJson(modelCache.stats()));
+
+        // Evaluate another model on local dataset: ForestCodec body (streamed), {"modelBase64"}
+        // (Java-serialized, compiled when possible, else SMILE predict), or {"modelHash", "source": peer URL}
         post("/evaluate", (req,res) -> {
-            Map<String,String> body = gson.fromJson(req.body(), Map.class);
-            byte[] bytes = Base64.getDecoder().decode(body.get("modelBase64"));
-            RandomForest foreignModel = (RandomForest) SerializationUtils.deserialize(bytes);
-            double err = evaluator.computeError(foreignModel, localX, localY);
+            Object foreignModel;
+            Map<String,String> body = isBinary(req.contentType()) ? Map.of() : gson.fromJson(req.body(), Map.class);
+            String hash = body.get("modelHash");
+            if (isBinary(req.contentType())) {
+                try {
+                    foreignModel = modelCache.put(req.raw().getInputStream());
+                } catch (IOException ex) {
+                    return badModel(res, ex);
+                }
+            } else if (hash != null) {
+                if (body.get("source") != null && !isPeer(body.get("source"))) {
+                    res.status(400);
+                    return gson.toJson(Map.of("error","source is not a configured peer","source",body.get("source")));
+                }
+                foreignModel = resolve(hash, body.get("source"));
+                if (foreignModel == null) {
+                    res.status(404);
+                    return gson.toJson(Map.of("error","unknown model","modelHash",hash));
+                }
+            } else {
+                byte[] bytes = Base64.getDecoder().decode(body.get("modelBase64"));
+                foreignModel = SerializationUtils.deserialize(bytes);
+            }
+            double err = errorOf(foreignModel);
             System.out.printf("Controller %d evaluated foreign model → error=%.4f%n", id, err);
             return gson.toJson(Map.of("error", err, "controller", id));
         });
 
+        // Evaluate many models in one request: {"models": [{"modelHash", "source"} or {"modelBase64"}, ...]},
+        // "modelBase64" (Java serialization) only with INLINE_JAVA_MODELS=true.
+        // Models are resolved concurrently and scored in one shared pass over the local data;
+        // "errors" is this controller's column of the errors matrix, null where a model failed.
+        post("/evaluateBatch", (req,res) -> {
+            Map<String,Object> body;
+            try {
+                body = gson.fromJson(req.body(), Map.class);
+            } catch (JsonSyntaxException ex) {
+                body = null;
+            }
+            String invalid = invalidBatch(body);
+            if (invalid != null) {
+                res.status(400);
+                return gson.toJson(Map.of("error", invalid, "controller", id));
+            }
+            List<Map<String,String>> refs = (List<Map<String,String>>) body.get("models");
+            List<CompiledForest> models = new ArrayList<>();
+            Map<Integer,RandomForest> smileOnly = new LinkedHashMap<>();   // Java-serialized models that do not compile
+            List<Integer> missing = new ArrayList<>();
+            try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<Object>> pending = new ArrayList<>();
+                for (Map<String,String> ref : refs) pending.add(exec.submit(() -> resolve(ref)));
+                for (int m = 0; m < pending.size(); m++) {
+                    Object model = null;
+                    try {
+                        model = pending.get(m).get();
+                    } catch (Exception ex) {
+                        System.err.printf("Controller %d could not load batch model %d: %s%n", id, m, ex.getCause());
+                    }
+                    if (model instanceof RandomForest rf) {
+                        CompiledForest cf = evaluator.compiled(rf);
+                        if (cf == null) smileOnly.put(m, rf);
+                        models.add(cf);
+                    } else {
+                        models.add((CompiledForest) model);
+                        if (model == null) missing.add(m);
+                    }
+                }
+            }
+            ensureNormalized();
+            long t0 = System.currentTimeMillis();
+            double[] errs = evaluator.computeErrors(models, localX, localY, evalThreads);
+            for (Map.Entry<Integer,RandomForest> e : smileOnly.entrySet()) errs[e.getKey()] = errorOf(e.getValue());
+            List<Double> errors = new ArrayList<>();
+            for (double e : errs) errors.add(Double.isNaN(e) ? null : e);   // JSON has no NaN
+            System.out.printf("Controller %d evaluated %d models in one pass (%d ms)%n", id, models.size(), System.currentTimeMillis() - t0);
+            return gson.toJson(Map.of("errors", errors, "missing", missing, "controller", id));
+        });
+
         get("/health", (req,res) -> "OK");
     }
+
+    // Why an /evaluateBatch body is unusable, or null: needs a "models" list whose entries each
+    // carry a string "modelHash" (optional string "source") or, if inlineJavaModels, a string "modelBase64"
+    private static String invalidBatch(Map<String,Object> body) {
+        if (body == null || !(body.get("models") instanceof List)) return "body needs a \"models\" list";
+        List<?> refs = (List<?>) body.get("models");
+        for (int m = 0; m < refs.size(); m++) {
+            if (!(refs.get(m) instanceof Map<?,?> ref)) return "models[" + m + "] is not an object";
+            Object hash = ref.get("modelHash"), source = ref.get("source"), b64 = ref.get("modelBase64");
+            boolean byHash = hash instanceof String && (source == null || source instanceof String);
+            if (!byHash && !(hash == null && b64 instanceof String)) {
+                return "models[" + m + "] needs a string \"modelHash\" or \"modelBase64\"";
+            }
+            if (!byHash && !inlineJavaModels) {
+                return "models[" + m + "]: inline Java-serialized models are disabled (INLINE_JAVA_MODELS), send {\"modelHash\", \"source\"}";
+            }
+        }
+        return null;
+    }
+
+    // One /evaluateBatch entry: CompiledForest by hash (pulled from source if needed), or the
+    // RandomForest of an inline Java-serialized Base64 model (only if inlineJavaModels)
+    private static Object resolve(Map<String,String> ref) throws Exception {
+        if (ref.get("modelHash") != null) return resolve(ref.get("modelHash"), ref.get("source"));
+        if (!inlineJavaModels) throw new IllegalArgumentException("Inline Java-serialized models are disabled");
+        return SerializationUtils.deserialize(Base64.getDecoder().decode(ref.get("modelBase64")));
+    }
+
+    // Error on the local data of a CompiledForest, or of a RandomForest (compiled if possible, else SMILE)
+    private static double errorOf(Object model) {
+        ensureNormalized();
+        if (model instanceof RandomForest rf) return evaluator.computeError(rf, localX, localY);
+        return evaluator.computeError((CompiledForest) model, localX, localY);
+    }
+
+    // Cached model for the hash, streamed once from source + "/model/<hash>" (a configured peer,
+    // ForestCodec only) on a miss; null if unknown
+    private static CompiledForest resolve(String hash, String source) throws Exception {
+        if (source == null) return modelCache.get(hash);
+        if (!isPeer(source)) throw new IllegalArgumentException("Not a configured peer: " + source);
+        return modelCache.get(hash, h -> {
+            CloseableHttpResponse r = peerClient().execute(new HttpGet(source + "/model/" + h));
+            if (r.getStatusLine().getStatusCode() != 200) {
+                r.close();
+                throw new IllegalStateException("Model " + h + " not found at " + source);
+            }
+            System.out.printf("Controller %d pulling model %s from %s%n", id, h.substring(0, 12), source);
+            return r.getEntity().getContent();   // closing it releases the connection
+        });
+    }
+
+    private static synchronized void setLocalModel(RandomForest model, CompiledForest compiled) {
+        localModel = model;
+        localCompiled = compiled;
+        localModelWire = null;
+        localModelHash = null;
+    }
+
+    // ForestCodec bytes of the local model, encoded and cached under their hash on first use;
+    // null when the model has no verified compiled form
+    private static synchronized byte[] localWire() throws Exception {
+        if (localModelWire == null && localCompiled != null) {
+            localModelWire = ForestCodec.encode(localCompiled, deflateModels);
+            localModelHash = ModelCache.hashOf(localModelWire);
+            modelCache.put(localModelHash, localCompiled);
+            System.out.printf("Controller %d encoded its model (hash %s, %d wire bytes)%n", id, localModelHash.substring(0, 12), localModelWire.length);
+        }
+        return localModelWire;
+    }
+
+    // Local model in ForestCodec format as an octet-stream response
+    private static synchronized Object binaryModel(spark.Response res) throws Exception {
+        byte[] wire = localWire();
+        if (wire == null) return notCompiled(res);
+        res.type(ForestCodec.CONTENT_TYPE);
+        res.header("X-Model-Hash", localModelHash);
+        return wire;
+    }
+
+    private static String notCompiled(spark.Response res) {
+        res.status(409);
+        return gson.toJson(Map.of("error","model cannot be compiled, use the Java-serialized JSON format","controller",id));
+    }
+
+    private static String badModel(spark.Response res, IOException ex) {
+        res.status(400);
+        return gson.toJson(Map.of("error","malformed model: " + (ex.getMessage() != null ? ex.getMessage() : "truncated stream"),"controller",id));
+    }
+
+    private static boolean isBinary(String contentType) {
+        return contentType != null && contentType.startsWith(ForestCodec.CONTENT_TYPE);
+    }
+
+    private static boolean isPeer(String url) {
+        return peerUrls.contains(normalizeUrl(url));
+    }
+
+    private static String normalizeUrl(String url) {
+        String u = url.trim();
+        while (u.endsWith("/")) u = u.substring(0, u.length() - 1);
+        return u;
+    }
+
+    private static synchronized CloseableHttpClient peerClient() {
+        if (peers == null) peers = HttpClients.createDefault();
+        return peers;
+    }
+
+    private static synchronized void ensureNormalized() {
+        if (normalized) return;
+        pre.transformInPlace(localX);
+        normalized = true;
+    }
 }
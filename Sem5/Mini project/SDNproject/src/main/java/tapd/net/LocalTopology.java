@@ -0,0 +1,98 @@
+package tapd.net;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Local multi-process test of the two-tier deployment: starts N ControllerService JVMs
+ * (ports 8080..), splits them into R contiguous shards with one RegionalCommandCenter
+ * JVM each (ports 9000..), waits until every /health answers, runs the RootAggregator
+ * in this JVM and stops the child processes. Child output goes to topology-logs/.
+ *
+ * Usage: java -cp <jar> tapd.net.LocalTopology [N=6] [R=2] [compromised ids, e.g. 1,4]
+ * The DATASET / THETA environment of this process is passed to the controllers.
+ */
+public class LocalTopology {
+
+    public static void main(String[] args) throws Exception {
+        int N = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int R = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        Set<Integer> compromised = new HashSet<>();
+        for (String s : (args.length > 2 ? args[2] : "1").split(",")) if (!s.isBlank()) compromised.add(Integer.parseInt(s.trim()));
+        R = Math.max(1, Math.min(R, N));
+
+        File logs = new File("topology-logs");
+        logs.mkdirs();
+        List<Process> children = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> children.forEach(Process::destroy)));
+
+        String[] ctrlUrls = new String[N];
+        for (int i = 0; i < N; i++) {
+            ctrlUrls[i] = "http://localhost:" + (8080 + i);
+            Map<String, String> env = new HashMap<>();
+            env.put("PORT", String.valueOf(8080 + i));
+            env.put("ID", String.valueOf(i));
+            env.put("COMPROMISED", String.valueOf(compromised.contains(i)));
+            children.add(start("tapd.net.ControllerService", env, new File(logs, "controller-" + i + ".log")));
+        }
+
+        String[] regionUrls = new String[R];
+        for (int r = 0; r < R; r++) {
+            int from = r * N / R, to = (r + 1) * N / R;
+            StringBuilder urls = new StringBuilder(), ids = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                if (i > from) { urls.append(","); ids.append(","); }
+                urls.append(ctrlUrls[i]);
+                ids.append(i);
+            }
+            regionUrls[r] = "http://localhost:" + (9000 + r);
+            Map<String, String> env = new HashMap<>();
+            env.put("PORT", String.valueOf(9000 + r));
+            env.put("REGION", "region-" + r);
+            env.put("CONTROLLERS", urls.toString());
+            env.put("CONTROLLER_IDS", ids.toString());
+            children.add(start("tapd.net.RegionalCommandCenter", env, new File(logs, "region-" + r + ".log")));
+        }
+
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            long deadline = System.currentTimeMillis() + 10 * 60_000L;   // dataset loading can be slow
+            for (String url : ctrlUrls) awaitHealth(client, url, deadline);
+            for (String url : regionUrls) awaitHealth(client, url, deadline);
+            System.out.println("Topology up: " + N + " controllers, " + R + " regions, compromised=" + compromised);
+
+            Map<String, Object> result = RootAggregator.fuse(RootAggregator.collect(client, regionUrls));
+            System.out.println("Root suspects = " + result.get("suspects") + " (truth " + compromised + ")");
+            System.out.println("Fused scores = " + result.get("scores"));
+            System.out.println("Evaluations = " + result.get("evaluations") + " (flat TAPD: " + (long) N * N
+                    + "), summary bytes at root = " + result.get("summaryBytes"));
+        } finally {
+            for (Process p : children) p.destroy();
+        }
+    }
+
+    private static Process start(String mainClass, Map<String, String> env, File log) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), mainClass);
+        pb.environment().putAll(env);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(log);
+        return pb.start();
+    }
+
+    private static void awaitHealth(CloseableHttpClient client, String url, long deadline) throws Exception {
+        while (true) {
+            try (CloseableHttpResponse res = client.execute(new HttpGet(url + "/health"))) {
+                if (res.getStatusLine().getStatusCode() == 200) return;
+            } catch (Exception ex) {
+                // not listening yet
+            }
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException("No /health from " + url);
+            Thread.sleep(500);
+        }
+    }
+}
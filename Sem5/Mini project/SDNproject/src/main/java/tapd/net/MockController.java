@@ -28,6 +28,12 @@ public class MockController {
             return gson.toJson(Map.of("modelBase64", "mockModel" + port));
         });
 
+        // /modelHash endpoint (content-addressed mode)
+        get("/modelHash", (req, res) -> {
+            res.type("application/json");
+            return gson.toJson(Map.of("modelHash", "mockModel" + port));
+        });
+
         // /evaluate endpoint
         post("/evaluate", (req, res) -> {
             res.type("application/json");
@@ -0,0 +1,170 @@
+package tapd.net;
+
+import tapd.model.CompiledForest;
+import tapd.model.ForestCodec;
+
+import java.io.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Decoded models (CompiledForest) keyed by the SHA-256 of their wire bytes (content address),
+ * so a controller fetches and decodes each foreign model once instead of on every /evaluate.
+ * Wire bytes are always ForestCodec binary: Java-serialized models are never deserialized here
+ * (ControllerService compiles those itself and caches them with put(hash, model)).
+ *
+ * Least-recently-used entries are evicted beyond maxEntries models or maxBytes of node arrays.
+ * Concurrent misses on the same hash share one load.
+ *
+ * Usage:
+ *   ModelCache cache = new ModelCache(32, 512L << 20);
+ *   CompiledForest m = cache.get(hash, h -> openStream(h));   // streams, checks the hash, caches
+ */
+public class ModelCache {
+
+    /** Opens the wire bytes of a model that is not cached (closed by the cache). */
+    public interface Loader {
+        InputStream open(String hash) throws Exception;
+    }
+
+    public final int maxEntries;
+    public final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<CompiledForest>> loading = new ConcurrentHashMap<>();
+    private long bytes;
+    private long hits, misses, evictions;
+
+    private static class Entry {
+        final CompiledForest model;
+        final long size;
+        Entry(CompiledForest model, long size) { this.model = model; this.size = size; }
+    }
+
+    public ModelCache(int maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    /** Lower-case hex SHA-256 of the bytes. */
+    public static String hashOf(byte[] wire) {
+        return hex(sha256().digest(wire));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);   // every JVM ships SHA-256
+        }
+    }
+
+    private static String hex(byte[] d) {
+        StringBuilder sb = new StringBuilder(d.length * 2);
+        for (byte b : d) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    /** Cached model or null. */
+    public synchronized CompiledForest get(String hash) {
+        Entry e = lru.get(hash);
+        if (e == null) { misses++; return null; }
+        hits++;
+        return e.model;
+    }
+
+    public synchronized boolean contains(String hash) {
+        return lru.containsKey(hash);
+    }
+
+    /** Cached model, or stream + decode + verify it once (concurrent callers wait for the same load). */
+    public CompiledForest get(String hash, Loader loader) throws Exception {
+        CompiledForest cached = get(hash);
+        if (cached != null) return cached;
+        CompletableFuture<CompiledForest> mine = new CompletableFuture<>();
+        CompletableFuture<CompiledForest> running = loading.putIfAbsent(hash, mine);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+            }
+        }
+        try {
+            CompiledForest model = load(loader.open(hash), hash, new String[1]);
+            mine.complete(model);
+            return model;
+        } catch (Exception ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(hash);
+        }
+    }
+
+    /** Decode a pushed ForestCodec stream (e.g. a request body) while hashing it, cache and return the model. */
+    public CompiledForest put(InputStream wire) throws Exception {
+        return put(wire, new String[1]);
+    }
+
+    /** As put(wire), hashOut[0] = the hash it is cached under. */
+    public CompiledForest put(InputStream wire, String[] hashOut) throws Exception {
+        return load(wire, null, hashOut);
+    }
+
+    // Decode ForestCodec while hashing, check expectedHash (if set), cache; hashOut[0] = the digest
+    private CompiledForest load(InputStream wire, String expectedHash, String[] hashOut) throws Exception {
+        MessageDigest md = sha256();
+        try (DigestInputStream in = new DigestInputStream(wire, md)) {
+            CompiledForest model = ForestCodec.readWhole(in);   // no trailing bytes, so the hash covers exactly the forest
+            String hash = hex(md.digest());
+            if (expectedHash != null && !hash.equals(expectedHash)) {
+                throw new IllegalStateException("Model bytes do not match hash " + expectedHash);
+            }
+            put(hash, model);
+            hashOut[0] = hash;
+            return model;
+        }
+    }
+
+    public void put(String hash, CompiledForest model) {
+        put(hash, model, model.sizeInBytes());
+    }
+
+    public synchronized void put(String hash, CompiledForest model, long size) {
+        Entry old = lru.put(hash, new Entry(model, size));
+        if (old != null) bytes -= old.size;
+        bytes += size;
+        Iterator<Map.Entry<String, Entry>> it = lru.entrySet().iterator();
+        while ((lru.size() > maxEntries || bytes > maxBytes) && lru.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(hash)) continue;   // keep what was just added
+            bytes -= eldest.getValue().size;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        lru.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() { return lru.size(); }
+    public synchronized long sizeInBytes() { return bytes; }
+
+    /** Map{ "entries", "bytes", "hits", "misses", "evictions" } for /cache. */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("entries", lru.size());
+        out.put("bytes", bytes);
+        out.put("hits", hits);
+        out.put("misses", misses);
+        out.put("evictions", evictions);
+        return out;
+    }
+}
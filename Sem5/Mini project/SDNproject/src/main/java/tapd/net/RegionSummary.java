@@ -0,0 +1,82 @@
+package tapd.net;
+
+import tapd.detect.AutoDetector;
+import tapd.detect.ConfidenceEvaluator;
+import tapd.detect.OutlierDetector;
+import tapd.detect.Voter;
+import tapd.model.ErrorMatrix;
+
+import java.util.*;
+
+/**
+ * What a RegionalCommandCenter sends to the RootAggregator after a TAPD/CBMF round
+ * over its shard: O(shard size) numbers instead of the shard's errors matrix.
+ * All maps are keyed by GLOBAL controller id. Plain public fields for Gson.
+ *
+ *   confidence      CBMF confidence of each controller's model (controllers order)
+ *   weightedScores  confidence-weighted vote rate against each controller, 0..1
+ *                   (comparable between regions of different sizes)
+ *   votes           raw IQR votes received (Voter.aggregateVotes)
+ *   topSuspects     AutoDetector result inside the region
+ *   missing         cells the round could not fill, as "source->destination" global ids
+ *                   (detection then uses OutlierDetector.detectPartialOutliers)
+ */
+public class RegionSummary {
+    public String region;
+    public int[] controllers;
+    public double[] confidence;
+    public Map<Integer, Double> weightedScores;
+    public Map<Integer, Integer> votes;
+    public int[] topSuspects;
+    public List<String> missing;
+    public int evaluations;
+    public long roundMillis;
+
+    /** Run detection on a region's errors matrix; ids[i] is the global id of row/column i. */
+    public static RegionSummary of(String region, int[] ids, ErrorMatrix errors, double eta) {
+        OutlierDetector od = new OutlierDetector();
+        List<int[]> absent = errors.missingCells();
+        List<Set<Integer>> local = new ArrayList<>();
+        if (absent.isEmpty()) {
+            for (int s = 0; s < errors.rows(); s++) local.add(od.detectIQROutliers(errors.row(s), eta));
+        } else {
+            local = (List<Set<Integer>>) od.detectPartialOutliers(errors, eta, 3).get("votes");
+        }
+        double[] confidence = ConfidenceEvaluator.computeConfidence(errors);
+
+        RegionSummary r = new RegionSummary();
+        r.region = region;
+        r.missing = new ArrayList<>();
+        for (int[] c : absent) r.missing.add(ids[c[0]] + "->" + ids[c[1]]);
+        r.controllers = ids.clone();
+        r.confidence = confidence;
+        r.votes = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> e : new Voter().aggregateVotes(local).entrySet()) {
+            r.votes.put(ids[e.getKey()], e.getValue());
+        }
+        r.weightedScores = new TreeMap<>();
+        for (Map.Entry<Integer, Double> e : ConfidenceEvaluator.weightedVoteRates(local, confidence, errors).entrySet()) {
+            r.weightedScores.put(ids[e.getKey()], e.getValue());
+        }
+        // same weighted frequencies CommandCenterApp feeds to AutoDetector (rates when cells are missing)
+        Map<Integer, Double> weightedFreq = new HashMap<>();
+        if (absent.isEmpty()) {
+            for (int i = 0; i < local.size(); i++) {
+                for (int suspect : local.get(i)) weightedFreq.merge(ids[suspect], confidence[i], Double::sum);
+            }
+        } else {
+            weightedFreq.putAll(r.weightedScores);
+        }
+        Set<Integer> top = AutoDetector.detectByIQRThenTopK(weightedFreq, 0.6, 1.5);
+        r.topSuspects = top.stream().mapToInt(Integer::intValue).sorted().toArray();
+        for (int s = 0; s < errors.rows(); s++) r.evaluations += errors.rowCount(s);
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        return "RegionSummary{" + region + ", controllers=" + Arrays.toString(controllers)
+                + ", topSuspects=" + Arrays.toString(topSuspects) + ", evaluations=" + evaluations
+                + (missing == null || missing.isEmpty() ? "" : ", missing=" + missing.size()) + "}";
+    }
+}
@@ -0,0 +1,90 @@
+package tapd.net;
+
+import static spark.Spark.*;
+
+import com.google.gson.Gson;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import tapd.model.ErrorMatrix;
+
+import java.util.Map;
+
+/**
+ * Middle tier of the two-tier deployment: a command center for one shard of controllers.
+ * It runs the usual TAPD round (train, fetch models, cross-evaluate) over its shard only
+ * and answers with a compact RegionSummary for the RootAggregator.
+ *
+ * Environment:
+ *   PORT            listen port (default 9000)
+ *   REGION          region name (default "region-<PORT>")
+ *   CONTROLLERS     comma-separated ControllerService URLs of the shard
+ *   CONTROLLER_IDS  their global ids, same order (default 0..n-1)
+ *   ETA             IQR multiplier (default 0.1)
+ *   CONCURRENT      fan out to the shard in parallel (default true), PER_HOST requests per controller (2)
+ *   CALL_TIMEOUT_MS, TRAIN_TIMEOUT_MS, HEDGE_AFTER_MS, ROUND_BUDGET_MS
+ *                   straggler tolerance (see ControllerFleet), all off by default
+ *   MODEL_BY_HASH   send model hashes instead of models (controllers pull from each other)
+ *   MODEL_FORMAT    "binary" to move models as ForestCodec octet-streams (default "json")
+ *   BATCH_EVALUATE  one /evaluateBatch per controller instead of one /evaluate per cell (with
+ *                   MODEL_FORMAT=json and no MODEL_BY_HASH, controllers need INLINE_JAVA_MODELS=true)
+ *
+ * Endpoints: POST /round (run a round, returns the summary), GET /summary (last one), GET /health
+ */
+public class RegionalCommandCenter {
+    static Gson gson = new Gson();
+    private static RegionSummary last;
+
+    public static void main(String[] args) {
+        int port = Integer.parseInt(System.getenv().getOrDefault("PORT", "9000"));
+        String region = System.getenv().getOrDefault("REGION", "region-" + port);
+        String[] urls = System.getenv().getOrDefault("CONTROLLERS", "http://localhost:8080").split(",");
+        int[] ids = new int[urls.length];
+        String idList = System.getenv("CONTROLLER_IDS");
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = urls[i].trim();
+            ids[i] = idList == null ? i : Integer.parseInt(idList.split(",")[i].trim());
+        }
+        double eta = Double.parseDouble(System.getenv().getOrDefault("ETA", "0.1"));
+        boolean concurrent = Boolean.parseBoolean(System.getenv().getOrDefault("CONCURRENT", "true"));
+        int perHost = Integer.parseInt(System.getenv().getOrDefault("PER_HOST", "2"));
+        CloseableHttpClient client = concurrent ? ControllerFleet.pooledClient(urls.length, perHost) : HttpClients.createDefault();
+        ControllerFleet fleet = new ControllerFleet(client, urls, perHost);
+        fleet.concurrent = concurrent;
+        fleet.callTimeoutMs = Integer.parseInt(System.getenv().getOrDefault("CALL_TIMEOUT_MS", "0"));
+        fleet.trainTimeoutMs = Integer.parseInt(System.getenv().getOrDefault("TRAIN_TIMEOUT_MS", "0"));
+        fleet.hedgeAfterMs = Integer.parseInt(System.getenv().getOrDefault("HEDGE_AFTER_MS", "0"));
+        fleet.roundBudgetMs = Long.parseLong(System.getenv().getOrDefault("ROUND_BUDGET_MS", "0"));
+        fleet.contentAddressed = Boolean.parseBoolean(System.getenv().getOrDefault("MODEL_BY_HASH", "false"));
+        // MODEL_FORMAT=binary: ForestCodec octet-stream instead of Java serialization + Base64 JSON
+        fleet.binaryModels = "binary".equals(System.getenv().getOrDefault("MODEL_FORMAT", "json"));
+        // BATCH_EVALUATE=true: one /evaluateBatch per controller (N requests per round instead of N^2)
+        fleet.batch = Boolean.parseBoolean(System.getenv().getOrDefault("BATCH_EVALUATE", "false"));
+
+        port(port);
+
+        post("/round", (req, res) -> {
+            res.type("application/json");
+            synchronized (RegionalCommandCenter.class) {
+                long t0 = System.currentTimeMillis();
+                fleet.startRound();
+                fleet.trainAll();
+                ErrorMatrix errors = fleet.crossEvaluate(fleet.fetchModels());
+                RegionSummary s = RegionSummary.of(region, ids, errors, eta);
+                s.roundMillis = System.currentTimeMillis() - t0;
+                last = s;
+                System.out.println("Region " + region + " round done: " + s);
+                return gson.toJson(s);
+            }
+        });
+
+        get("/summary", (req, res) -> {
+            res.type("application/json");
+            RegionSummary s = last;
+            return s == null ? gson.toJson(Map.of("error", "no round yet")) : gson.toJson(s);
+        });
+
+        get("/health", (req, res) -> "OK");
+
+        System.out.printf("Regional command center %s on port %d for %d controllers%n", region, port, urls.length);
+    }
+}
@@ -0,0 +1,88 @@
+package tapd.net;
+
+import com.google.gson.Gson;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import tapd.detect.AutoDetector;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Top tier of the two-tier deployment. Asks every RegionalCommandCenter to run a round
+ * (regions work in parallel), then fuses their RegionSummary objects with AutoDetector.
+ * The root only handles one summary per region, so its traffic and work grow with the
+ * number of regions and shard sizes, not with N^2 evaluations.
+ *
+ * Environment: REGIONS = comma-separated RegionalCommandCenter URLs.
+ */
+public class RootAggregator {
+    static Gson gson = new Gson();
+
+    public static void main(String[] args) throws Exception {
+        String[] regions = System.getenv().getOrDefault("REGIONS", "http://localhost:9000").split(",");
+        for (int i = 0; i < regions.length; i++) regions[i] = regions[i].trim();
+        System.out.println("=== TAPD SDN (Hierarchical root) === regions=" + regions.length);
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            Map<String, Object> result = fuse(collect(client, regions));
+            System.out.println("Fused scores: " + result.get("scores"));
+            System.out.println("Regional suspects: " + result.get("regionalSuspects"));
+            System.out.println("Root suspects (AutoDetector) = " + result.get("suspects"));
+            System.out.println("Evaluations in regions = " + result.get("evaluations")
+                    + ", summary bytes at root = " + result.get("summaryBytes"));
+        }
+    }
+
+    /** POST /round to every region at once; summaries come back in regions order. */
+    public static List<RegionSummary> collect(CloseableHttpClient client, String[] regions) throws Exception {
+        try (ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, regions.length))) {
+            List<Future<RegionSummary>> futures = new ArrayList<>();
+            for (String url : regions) {
+                futures.add(pool.submit(() -> {
+                    HttpPost post = new HttpPost(url + "/round");
+                    post.setEntity(new StringEntity("{}"));
+                    post.setHeader("Content-Type", "application/json");
+                    try (CloseableHttpResponse res = client.execute(post)) {
+                        String body = new String(res.getEntity().getContent().readAllBytes());
+                        return gson.fromJson(body, RegionSummary.class);
+                    }
+                }));
+            }
+            List<RegionSummary> out = new ArrayList<>();
+            for (Future<RegionSummary> f : futures) out.add(f.get());
+            return out;
+        }
+    }
+
+    /**
+     * Fuse region summaries. Returns Map{ "scores" (global id -> weighted vote rate),
+     * "confidence" (global id -> CBMF confidence), "regionalSuspects", "suspects"
+     * (AutoDetector over all scores), "evaluations", "summaryBytes" }.
+     */
+    public static Map<String, Object> fuse(List<RegionSummary> regions) {
+        Map<Integer, Double> scores = new TreeMap<>();
+        Map<Integer, Double> confidence = new TreeMap<>();
+        Set<Integer> regional = new TreeSet<>();
+        long evaluations = 0, bytes = 0;
+        for (RegionSummary r : regions) {
+            if (r.weightedScores != null) scores.putAll(r.weightedScores);
+            for (int i = 0; i < r.controllers.length; i++) confidence.put(r.controllers[i], r.confidence[i]);
+            if (r.topSuspects != null) for (int id : r.topSuspects) regional.add(id);
+            evaluations += r.evaluations;
+            bytes += gson.toJson(r).length();
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("scores", scores);
+        out.put("confidence", confidence);
+        out.put("regionalSuspects", regional);
+        out.put("suspects", new TreeSet<>(AutoDetector.detectByIQRThenTopK(scores, 0.6, 1.5)));
+        out.put("evaluations", evaluations);
+        out.put("summaryBytes", bytes);
+        return out;
+    }
+}
@@ -1,5 +1,7 @@
 package tapd.util;
 
+import tapd.model.CompiledForest;
+import tapd.model.ForestCodec;
 import tapd.model.ModelTrainer;
 import smile.classification.RandomForest;
 
@@ -43,11 +45,21 @@ public class CostAnalyzer {
         return sum;
     }
 
-    /** MN = sum of model serialized sizes */
+    /** bytes of a model in the binary wire format (ForestCodec, deflated); Java serialization if it does not compile */
+    public static long wireBytes(RandomForest m) {
+        if (m == null) return 0L;
+        try {
+            return ForestCodec.encodedSize(CompiledForest.compile(m), true);
+        } catch (Exception ex) {
+            return serializedBytes(m);
+        }
+    }
+
+    /** MN = sum of model sizes as sent between controllers (wireBytes) */
     public static long computeMN(List<RandomForest> models) {
         long sum = 0;
         for (RandomForest m : models) {
-            sum += serializedBytes(m);
+            sum += wireBytes(m);
         }
         return sum;
     }
@@ -75,6 +87,20 @@ public class CostAnalyzer {
         return NBC + (EWC * (double)N * (double)N);
     }
 
+    /** Bytes of one content-addressed /evaluate request: {"modelHash": 64 hex chars, "source": URL} */
+    public static final int HASH_REQUEST_BYTES = 128;
+
+    /** CF with content-addressed models (ControllerFleet.contentAddressed):
+     *  NBC + EWC * newModels * (N - 1) + HASH_REQUEST_BYTES * N^2
+     *  newModels: models whose hash the peers have not cached yet (N on the first round,
+     *  0 when a retrained model is byte-identical); each is pulled once by the N - 1 peers.
+     */
+    public static double computeCFContentAddressed(long avgModelBytes, int N, double northboundBytesPerRun, int newModels) {
+        double EWC = avgModelBytes;
+        double NBC = northboundBytesPerRun;
+        return NBC + EWC * (double) newModels * Math.max(0, N - 1) + (double) HASH_REQUEST_BYTES * N * N;
+    }
+
     /** EC: measure runtime milliseconds to compute errors for N models x N datasets.
      *  We provide a simple timer-based measurement: caller should pass runnable that performs the compute.
      */
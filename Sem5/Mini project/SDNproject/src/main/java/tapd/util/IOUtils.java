@@ -1,5 +1,7 @@
 package tapd.util;
 
+import tapd.model.ErrorMatrix;
+
 import java.io.*;
 import java.util.*;
 
@@ -19,6 +21,54 @@ public class IOUtils {
         }
     }
 
+    public static void writeErrorsMatrixCSV(ErrorMatrix matrix, File out) throws Exception {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(out))) {
+            StringBuilder sb = new StringBuilder();
+            for (int s = 0; s < matrix.rows(); s++) {
+                sb.setLength(0);
+                for (int d = 0; d < matrix.cols(); d++) {
+                    if (d > 0) sb.append(",");
+                    sb.append(String.format("%.6f", matrix.get(s, d)));
+                }
+                bw.write(sb.toString()); bw.newLine();
+            }
+        }
+    }
+
+    /** One line per forest size: k, mean transfer error, then the mean error of each source. */
+    public static void writeTreeSweepCSV(Map<Integer, ErrorMatrix> sweep, File out) throws Exception {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(out))) {
+            for (Map.Entry<Integer, ErrorMatrix> e : sweep.entrySet()) {
+                ErrorMatrix m = e.getValue();
+                double sum = 0.0;
+                int cnt = 0;
+                for (int s = 0; s < m.rows(); s++) {
+                    sum += m.rowSum(s);
+                    cnt += m.rowCount(s);
+                }
+                StringBuilder sb = new StringBuilder();
+                sb.append(e.getKey()).append(",").append(String.format("%.6f", cnt == 0 ? 0.0 : sum / cnt));
+                for (int s = 0; s < m.rows(); s++) sb.append(",").append(String.format("%.6f", m.rowMean(s)));
+                bw.write(sb.toString()); bw.newLine();
+            }
+        }
+    }
+
+    /** Header line, then one comma-separated line per row. */
+    public static void writeTableCSV(String header, List<double[]> rows, File out) throws Exception {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(out))) {
+            bw.write(header); bw.newLine();
+            for (double[] row : rows) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < row.length; i++) {
+                    if (i > 0) sb.append(",");
+                    sb.append(row[i] == Math.rint(row[i]) ? String.valueOf((long) row[i]) : String.format("%.6f", row[i]));
+                }
+                bw.write(sb.toString()); bw.newLine();
+            }
+        }
+    }
+
     public static void writeVotesCSV(List<Set<Integer>> votes, File out) throws Exception {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(out))) {
             for (int i = 0; i < votes.size(); i++) {
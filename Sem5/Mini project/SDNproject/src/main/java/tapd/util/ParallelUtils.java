@@ -0,0 +1,29 @@
+package tapd.util;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Dedicated ForkJoinPools for the parallel passes (transfers, training, batch scoring,
+ * CSV loading). ForkJoinPool is AutoCloseable since Java 19: close() waits for the
+ * submitted tasks and shuts the pool down, so callers use try-with-resources.
+ *
+ * Usage:
+ *   try (ForkJoinPool pool = ParallelUtils.pool(threads)) {
+ *       List<ForkJoinTask<?>> tasks = ...;   // pool.submit(...)
+ *       ParallelUtils.joinAll(tasks);
+ *   }
+ */
+public class ParallelUtils {
+
+    /** New pool of max(1, parallelism) threads. */
+    public static ForkJoinPool pool(int parallelism) {
+        return new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /** Join the tasks in order; the first failure is rethrown. */
+    public static void joinAll(List<? extends ForkJoinTask<?>> tasks) {
+        for (ForkJoinTask<?> t : tasks) t.join();
+    }
+}
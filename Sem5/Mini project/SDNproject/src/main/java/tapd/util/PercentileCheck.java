@@ -0,0 +1,190 @@
+package tapd.util;
+
+import java.util.*;
+
+/**
+ * Equivalence check for the selection-based StatsUtils against the sort-based definitions
+ * the detectors used before (full sort, then linear interpolation between closest ranks;
+ * AutoDetector's "exclusive" quartiles on a sorted copy), and for QuantileSketch against
+ * the exact quantile of the same data.
+ *
+ * StatsUtils must agree bit for bit: same ranks, same interpolation arithmetic. Inputs
+ * cover n = 1, 2, small and larger arrays, ties, constant, sorted and reverse-sorted data.
+ * The sketch must equal StatsUtils.percentile while isExact(), and stay within its rank
+ * error bound (2/k of n) once compacted, also after merging two halves.
+ * The run aborts with the first mismatch.
+ *
+ * Usage: java tapd.util.PercentileCheck [trials=20000] [seed=42]
+ */
+public class PercentileCheck {
+
+    private static final double[] PS = {0.0, 1.0, 5.0, 10.0, 25.0, 33.3, 50.0, 66.7, 75.0, 90.0, 95.0, 99.0, 100.0};
+
+    public static void main(String[] args) {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        Random rnd = new Random(seed);
+        System.out.println("=== Percentile equivalence check: trials=" + trials + " seed=" + seed + " ===");
+
+        long checks = 0;
+        for (int t = 0; t < trials; t++) {
+            double[] vals = sample(rnd, t);
+            double[] sorted = vals.clone();
+            Arrays.sort(sorted);
+            double[] before = vals.clone();
+
+            for (double p : PS) {
+                checks += expect("percentile", p, vals, sortedPercentile(sorted, p), StatsUtils.percentile(vals, p));
+                checks += expect("percentileExclusive", p, vals, sortedExclusive(sorted, p), StatsUtils.percentileExclusive(vals, p));
+            }
+            double p = rnd.nextDouble() * 100.0;
+            checks += expect("percentile", p, vals, sortedPercentile(sorted, p), StatsUtils.percentile(vals, p));
+            checks += expect("percentileExclusive", p, vals, sortedExclusive(sorted, p), StatsUtils.percentileExclusive(vals, p));
+
+            List<Double> boxed = new ArrayList<>();
+            for (double v : vals) boxed.add(v);
+            checks += expect("percentile(List)", p, vals, sortedPercentile(sorted, p), StatsUtils.percentile(boxed, p));
+            checks += expect("mad(List)", 50.0, vals, sortedMad(vals), StatsUtils.mad(boxed));
+
+            double[] s = StatsUtils.summary(vals);
+            checks += expect("summary Q1", 25.0, vals, sortedPercentile(sorted, 25.0), s[StatsUtils.Q1]);
+            checks += expect("summary median", 50.0, vals, sortedPercentile(sorted, 50.0), s[StatsUtils.MEDIAN]);
+            checks += expect("summary Q3", 75.0, vals, sortedPercentile(sorted, 75.0), s[StatsUtils.Q3]);
+            checks += expect("summary MAD", 50.0, vals, sortedMad(vals), s[StatsUtils.MAD]);
+            checks += expect("mad", 50.0, vals, sortedMad(vals), StatsUtils.mad(vals));
+
+            checks += checkSelect(vals, sorted, rnd);
+            if (!Arrays.equals(before, vals)) throw new IllegalStateException("Input modified: " + Arrays.toString(before));
+        }
+        System.out.println("StatsUtils: " + checks + " values identical to the sort-based definitions");
+
+        checkSketch(rnd);
+        System.out.println("OK");
+    }
+
+    // ---- previous implementations (sort, then interpolate) ----
+    static double sortedPercentile(double[] sorted, double p) {
+        if (sorted.length == 0) return 0.0;
+        double rank = (p / 100.0) * (sorted.length - 1);
+        int lo = (int) Math.floor(rank), hi = (int) Math.ceil(rank);
+        if (lo == hi) return sorted[lo];
+        double frac = rank - lo;
+        return sorted[lo] * (1 - frac) + sorted[hi] * frac;
+    }
+
+    static double sortedMad(double[] vals) {
+        double[] sorted = vals.clone();
+        Arrays.sort(sorted);
+        double med = sortedPercentile(sorted, 50.0);
+        double[] dev = new double[vals.length];
+        for (int i = 0; i < vals.length; i++) dev[i] = Math.abs(vals[i] - med);
+        Arrays.sort(dev);
+        return sortedPercentile(dev, 50.0);
+    }
+
+    // AutoDetector's quartiles before StatsUtils.percentileExclusive
+    static double sortedExclusive(double[] sorted, double p) {
+        if (sorted.length == 0) return 0.0;
+        double pos = p * (sorted.length + 1) / 100.0;
+        if (pos <= 1) return sorted[0];
+        if (pos >= sorted.length) return sorted[sorted.length - 1];
+        int idx = (int) pos;
+        double delta = pos - idx;
+        return sorted[idx - 1] + delta * (sorted[idx] - sorted[idx - 1]);
+    }
+
+    // ---- checks ----
+    private static int expect(String what, double p, double[] vals, double want, double got) {
+        if (Double.compare(want, got) != 0) {
+            throw new IllegalStateException(what + " p=" + p + " n=" + vals.length + ": expected " + want
+                    + ", got " + got + " for " + Arrays.toString(vals));
+        }
+        return 1;
+    }
+
+    // a[k] is the k-th smallest, nothing larger before it, nothing smaller after it
+    private static int checkSelect(double[] vals, double[] sorted, Random rnd) {
+        int n = vals.length;
+        int k = rnd.nextInt(n);
+        double[] a = vals.clone();
+        StatsUtils.select(a, 0, n, k);
+        if (a[k] != sorted[k]) throw new IllegalStateException("select k=" + k + ": " + a[k] + " != " + sorted[k]);
+        for (int i = 0; i < k; i++) if (a[i] > a[k]) throw new IllegalStateException("select: a[" + i + "] > a[k]");
+        for (int i = k + 1; i < n; i++) if (a[i] < a[k]) throw new IllegalStateException("select: a[" + i + "] < a[k]");
+        double[] b = a.clone();
+        Arrays.sort(b);
+        if (!Arrays.equals(b, sorted)) throw new IllegalStateException("select lost or duplicated values");
+        return 1;
+    }
+
+    private static void checkSketch(Random rnd) {
+        int k = QuantileSketch.DEFAULT_K;
+        // exact while nothing was compacted
+        double[] small = sample(rnd, 3);
+        QuantileSketch exact = QuantileSketch.of(small);
+        if (!exact.isExact()) throw new IllegalStateException("Sketch of " + small.length + " values is not exact");
+        for (double p : PS) expect("sketch (exact)", p, small, StatsUtils.percentile(small, p), exact.quantile(p / 100.0));
+
+        double worst = 0.0;
+        for (int n : new int[]{1_000, 20_000, 200_000}) {
+            double[] vals = new double[n];
+            for (int i = 0; i < n; i++) vals[i] = rnd.nextInt(3) == 0 ? Math.round(rnd.nextGaussian() * 10) : rnd.nextGaussian();
+            double[] sorted = vals.clone();
+            Arrays.sort(sorted);
+            QuantileSketch whole = QuantileSketch.of(vals);
+            QuantileSketch merged = QuantileSketch.of(Arrays.copyOfRange(vals, 0, n / 2))
+                    .merge(QuantileSketch.of(Arrays.copyOfRange(vals, n / 2, n)));
+            for (QuantileSketch s : new QuantileSketch[]{whole, merged}) {
+                if (s.count() != n) throw new IllegalStateException("Sketch counted " + s.count() + " of " + n);
+                for (double p : PS) {
+                    double err = rankError(sorted, s.quantile(p / 100.0), p / 100.0);
+                    worst = Math.max(worst, err);
+                    if (err > 2.0 / k) {
+                        throw new IllegalStateException("Sketch rank error " + err + " at q=" + p / 100.0 + ", n=" + n);
+                    }
+                }
+            }
+        }
+        System.out.printf("QuantileSketch: exact below capacity, worst rank error %.4f (bound %.4f)%n", worst, 2.0 / k);
+    }
+
+    // Distance of q from the rank range the value v covers in sorted, as a fraction of n
+    private static double rankError(double[] sorted, double v, double q) {
+        int n = sorted.length;
+        int lo = lowerBound(sorted, v), hi = upperBound(sorted, v);
+        double target = q * n;
+        if (target < lo) return (lo - target) / n;
+        if (target > hi) return (target - hi) / n;
+        return 0.0;
+    }
+
+    private static int lowerBound(double[] a, double v) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) { int m = (lo + hi) >>> 1; if (a[m] < v) lo = m + 1; else hi = m; }
+        return lo;
+    }
+
+    private static int upperBound(double[] a, double v) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) { int m = (lo + hi) >>> 1; if (a[m] <= v) lo = m + 1; else hi = m; }
+        return lo;
+    }
+
+    // Mix of shapes: tiny arrays, ties, constant, sorted / reverse-sorted, error-like values
+    private static double[] sample(Random rnd, int t) {
+        int n = t % 7 == 0 ? 1 + rnd.nextInt(3) : 1 + rnd.nextInt(t % 5 == 0 ? 2_000 : 60);
+        double[] a = new double[n];
+        int shape = t % 6;
+        for (int i = 0; i < n; i++) {
+            switch (shape) {
+                case 0 -> a[i] = rnd.nextInt(4);                         // heavy ties
+                case 1 -> a[i] = 0.25;                                   // constant
+                case 2 -> a[i] = i * 0.5;                                // sorted
+                case 3 -> a[i] = (n - i) * 1.5;                          // reverse-sorted
+                case 4 -> a[i] = rnd.nextGaussian() * 1e3;               // signed, wide
+                default -> a[i] = Math.round(rnd.nextDouble() * 1e4) / 1e4;   // error rates
+            }
+        }
+        return a;
+    }
+}
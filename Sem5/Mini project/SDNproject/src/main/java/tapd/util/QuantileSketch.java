@@ -0,0 +1,182 @@
+package tapd.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Mergeable streaming quantile sketch (KLL).
+ *
+ * Values go into level 0; when the sketch is over capacity the lowest full level is
+ * sorted and every other item (random offset) moves one level up with twice the
+ * weight. Lower levels get geometrically smaller capacities (factor 2/3), so memory
+ * stays O(k) and the rank error is about 1.7/k of n (k = 200: under 1%).
+ *
+ * Until the first compaction the sketch holds every value and quantile(q) is exact
+ * (same interpolation as StatsUtils.percentile). Two sketches of different parts of
+ * the data merge into a sketch of the whole. The coin flips use a fixed-seed
+ * generator, so the same input order gives the same sketch.
+ *
+ * Usage:
+ *   QuantileSketch s = QuantileSketch.of(errors.row(src).observed());
+ *   s.merge(otherSketch);
+ *   double q75 = s.quantile(0.75);
+ */
+public class QuantileSketch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_K = 200;
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private long count;
+    private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+    private boolean compacted;
+    private long state = 0x9E3779B97F4A7C15L;   // xorshift state for the coin flips
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("k must be at least 8: " + k);
+        this.k = k;
+        levels[0] = new double[k];
+    }
+
+    public static QuantileSketch of(double[] vals) {
+        return of(vals, DEFAULT_K);
+    }
+
+    public static QuantileSketch of(double[] vals, int k) {
+        QuantileSketch s = new QuantileSketch(k);
+        for (double v : vals) s.add(v);
+        return s;
+    }
+
+    /** Add one value (NaN is ignored). */
+    public void add(double v) {
+        if (Double.isNaN(v)) return;
+        append(0, v);
+        count++;
+        if (v < min) min = v;
+        if (v > max) max = v;
+        compress();
+    }
+
+    /** Add everything o has seen (o is not changed). */
+    public QuantileSketch merge(QuantileSketch o) {
+        if (o.count == 0) return this;
+        while (levels.length < o.levels.length) addLevel();
+        for (int h = 0; h < o.levels.length; h++) {
+            for (int i = 0; i < o.sizes[h]; i++) append(h, o.levels[h][i]);
+        }
+        count += o.count;
+        min = Math.min(min, o.min);
+        max = Math.max(max, o.max);
+        compacted |= o.compacted;
+        compress();
+        return this;
+    }
+
+    public long count() { return count; }
+
+    /** Values currently kept (at most a few times k). */
+    public int retained() {
+        int n = 0;
+        for (int s : sizes) n += s;
+        return n;
+    }
+
+    public boolean isExact() { return !compacted; }
+
+    /** Approximate q-quantile, 0 <= q <= 1 (exact while isExact()). 0.0 when empty. */
+    public double quantile(double q) {
+        if (count == 0) return 0.0;
+        if (q <= 0.0) return min;
+        if (q >= 1.0) return max;
+        if (!compacted) return StatsUtils.percentile(Arrays.copyOf(levels[0], sizes[0]), q * 100.0);
+
+        int n = retained();
+        double[] vals = new double[n];
+        long[] weights = new long[n];
+        int m = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                vals[m] = levels[h][i];
+                weights[m++] = 1L << h;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(vals[a], vals[b]));
+        double target = q * count;
+        long cum = 0;
+        for (int i = 0; i < n; i++) {
+            cum += weights[order[i]];
+            if (cum > target) return vals[order[i]];
+        }
+        return max;
+    }
+
+    private void append(int h, double v) {
+        if (sizes[h] == levels[h].length) levels[h] = Arrays.copyOf(levels[h], Math.max(8, levels[h].length * 2));
+        levels[h][sizes[h]++] = v;
+    }
+
+    private void addLevel() {
+        int H = levels.length;
+        levels = Arrays.copyOf(levels, H + 1);
+        sizes = Arrays.copyOf(sizes, H + 1);
+        levels[H] = new double[8];
+    }
+
+    // Capacity of level h when there are H levels (top level gets k)
+    private int capacity(int h, int H) {
+        return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, H - 1 - h)));
+    }
+
+    private int totalCapacity() {
+        int c = 0;
+        for (int h = 0; h < levels.length; h++) c += capacity(h, levels.length);
+        return c;
+    }
+
+    private void compress() {
+        while (retained() >= totalCapacity()) {
+            int H = levels.length;
+            int h = 0;
+            while (h < H - 1 && sizes[h] < capacity(h, H)) h++;
+            if (h == H - 1) addLevel();
+            compact(h);
+        }
+    }
+
+    // Sort level h, promote every other item to h + 1; an odd item stays behind
+    private void compact(int h) {
+        int m = sizes[h];
+        double[] lv = levels[h];
+        Arrays.sort(lv, 0, m);
+        int even = m & ~1;
+        int offset = nextBit();
+        for (int i = offset; i < even; i += 2) append(h + 1, lv[i]);
+        if (m > even) lv[0] = lv[m - 1];
+        sizes[h] = m - even;
+        compacted = true;
+    }
+
+    private int nextBit() {
+        long x = state;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        state = x;
+        return (int) (x >>> 63);
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{k=" + k + ", count=" + count + ", retained=" + retained()
+                + ", levels=" + levels.length + (compacted ? "" : ", exact") + "}";
+    }
+}
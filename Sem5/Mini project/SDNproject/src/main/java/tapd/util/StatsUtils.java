@@ -2,23 +2,186 @@ package tapd.util;
 
 import java.util.*;
 
-/** Small stats helpers. */
+/**
+ * Small stats helpers.
+ *
+ * Percentiles interpolate linearly between closest ranks (rank = p/100 * (n-1)). The
+ * double[] versions use quickselect on one scratch copy instead of a full sort, and
+ * summary(...) gets Q1, median, Q3 and MAD from that copy in one go. Inputs must not
+ * contain NaN (use ErrorMatrix.View.observed()).
+ */
 public class StatsUtils {
+    /** Positions in the array returned by summary(...). */
+    public static final int Q1 = 0, MEDIAN = 1, Q3 = 2, MAD = 3;
+
     public static double percentile(List<Double> vals, double p) {
         if (vals == null || vals.isEmpty()) return 0.0;
-        List<Double> s = new ArrayList<>(vals);
-        Collections.sort(s);
-        double rank = (p/100.0) * (s.size()-1);
-        int lo = (int)Math.floor(rank), hi = (int)Math.ceil(rank);
-        if (lo == hi) return s.get(lo);
-        double frac = rank - lo;
-        return s.get(lo)*(1-frac) + s.get(hi)*frac;
+        return percentile(toArray(vals), p);
     }
     public static double median(List<Double> vals) { return percentile(vals, 50.0); }
     public static double mad(List<Double> vals) {
+        if (vals == null || vals.isEmpty()) return 0.0;
+        return mad(toArray(vals));
+    }
+
+    private static double[] toArray(List<Double> vals) {
+        double[] a = new double[vals.size()];
+        for (int i = 0; i < a.length; i++) a[i] = vals.get(i);
+        return a;
+    }
+
+    // Primitive versions (same interpolation); vals is not modified
+    public static double percentile(double[] vals, double p) {
+        if (vals == null || vals.length == 0) return 0.0;
+        return percentileInPlace(Arrays.copyOf(vals, vals.length), vals.length, p);
+    }
+    public static double median(double[] vals) { return percentile(vals, 50.0); }
+
+    /**
+     * {Q1, median, Q3, MAD} of vals (index with Q1/MEDIAN/Q3/MAD) from one scratch copy:
+     * the three quantiles are selected in increasing rank order, each search starting
+     * where the previous one stopped, then the same buffer holds the absolute deviations
+     * for the MAD. vals is not modified.
+     */
+    public static double[] summary(double[] vals) {
+        double[] out = new double[4];
+        int n = vals == null ? 0 : vals.length;
+        if (n == 0) return out;
+        double[] a = Arrays.copyOf(vals, n);
+        int from = 0;
+        double[] ps = {25.0, 50.0, 75.0};
+        for (int q = 0; q < 3; q++) {
+            double rank = (ps[q] / 100.0) * (n - 1);
+            int lo = (int) Math.floor(rank), hi = (int) Math.ceil(rank);
+            select(a, from, n, lo);
+            double v = a[lo];
+            if (hi != lo) {
+                select(a, lo + 1, n, hi);
+                double frac = rank - lo;
+                v = v * (1 - frac) + a[hi] * frac;
+            }
+            out[q] = v;
+            from = hi;
+        }
+        double med = out[MEDIAN];
+        for (int i = 0; i < n; i++) a[i] = Math.abs(vals[i] - med);
+        out[MAD] = percentileInPlace(a, n, 50.0);
+        return out;
+    }
+
+    /**
+     * Percentile with the "exclusive" definition (position p/100 * (n+1), 1-based,
+     * clamped to the extremes), as AutoDetector uses for its score quartiles.
+     */
+    public static double percentileExclusive(double[] vals, double p) {
+        if (vals == null || vals.length == 0) return 0.0;
+        int n = vals.length;
+        double[] a = Arrays.copyOf(vals, n);
+        double pos = p * (n + 1) / 100.0;
+        if (pos <= 1) return min(a);
+        if (pos >= n) return max(a);
+        int idx = (int) pos;
+        double delta = pos - idx;
+        select(a, 0, n, idx - 1);
+        double lo = a[idx - 1];
+        select(a, idx, n, idx);
+        return lo + delta * (a[idx] - lo);
+    }
+
+    // Percentile of a[0..n); a is reordered
+    private static double percentileInPlace(double[] a, int n, double p) {
+        double rank = (p/100.0) * (n-1);
+        int lo = (int)Math.floor(rank), hi = (int)Math.ceil(rank);
+        select(a, 0, n, lo);
+        if (lo == hi) return a[lo];
+        select(a, lo + 1, n, hi);
+        double frac = rank - lo;
+        return a[lo]*(1-frac) + a[hi]*frac;
+    }
+
+    /**
+     * Quickselect (median-of-three pivot, Hoare partition): afterwards a[k] holds the
+     * value a sorted a[from..to) would have at k, with smaller values before it and
+     * larger after it.
+     */
+    public static void select(double[] a, int from, int to, int k) {
+        int lo = from, hi = to - 1;
+        while (hi > lo) {
+            if (hi - lo < 16) {   // insertion sort for small ranges
+                for (int i = lo + 1; i <= hi; i++) {
+                    double v = a[i];
+                    int j = i - 1;
+                    while (j >= lo && a[j] > v) { a[j + 1] = a[j]; j--; }
+                    a[j + 1] = v;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < a[lo]) swap(a, mid, lo);
+            if (a[hi] < a[lo]) swap(a, hi, lo);
+            if (a[hi] < a[mid]) swap(a, hi, mid);
+            double pivot = a[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) { swap(a, i, j); i++; j--; }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;   // j < k < i: a[k] == pivot
+        }
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double t = a[i]; a[i] = a[j]; a[j] = t;
+    }
+
+    private static double min(double[] a) {
+        double m = a[0];
+        for (double v : a) if (v < m) m = v;
+        return m;
+    }
+
+    private static double max(double[] a) {
+        double m = a[0];
+        for (double v : a) if (v > m) m = v;
+        return m;
+    }
+
+    /** Inverse standard normal CDF (Acklam's rational approximation, rel. error < 1.2e-9). */
+    public static double normalQuantile(double p) {
+        if (p <= 0.0) return Double.NEGATIVE_INFINITY;
+        if (p >= 1.0) return Double.POSITIVE_INFINITY;
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00};
+        double q, r;
+        if (p < 0.02425) {
+            q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0]*q + c[1])*q + c[2])*q + c[3])*q + c[4])*q + c[5])
+                    / ((((d[0]*q + d[1])*q + d[2])*q + d[3])*q + 1);
+        }
+        if (p > 1 - 0.02425) {
+            q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0]*q + c[1])*q + c[2])*q + c[3])*q + c[4])*q + c[5])
+                    / ((((d[0]*q + d[1])*q + d[2])*q + d[3])*q + 1);
+        }
+        q = p - 0.5;
+        r = q * q;
+        return (((((a[0]*r + a[1])*r + a[2])*r + a[3])*r + a[4])*r + a[5])*q
+                / (((((b[0]*r + b[1])*r + b[2])*r + b[3])*r + b[4])*r + 1);
+    }
+    public static double mad(double[] vals) {
+        if (vals == null || vals.length == 0) return 0.0;
         double med = median(vals);
-        List<Double> dev = new ArrayList<>();
-        for (double v : vals) dev.add(Math.abs(v - med));
-        return median(dev);
+        double[] dev = new double[vals.length];
+        for (int i = 0; i < vals.length; i++) dev[i] = Math.abs(vals[i] - med);
+        return percentileInPlace(dev, dev.length, 50.0);
     }
 }